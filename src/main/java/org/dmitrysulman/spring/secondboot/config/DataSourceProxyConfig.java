@@ -0,0 +1,35 @@
+package org.dmitrysulman.spring.secondboot.config;
+
+import net.ttddyy.dsproxy.listener.logging.SLF4JLogLevel;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+public class DataSourceProxyConfig {
+
+    public static final String SLOW_QUERY_LOGGER = "library.slow-query";
+
+    @Bean
+    public static BeanPostProcessor dataSourceProxyPostProcessor(Environment environment) {
+        long thresholdMillis = environment.getProperty("library.slow-query.threshold-ms", Long.class, 200L);
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof DataSource) || bean instanceof ProxyDataSource) {
+                    return bean;
+                }
+                return ProxyDataSourceBuilder.create(beanName, (DataSource) bean)
+                        .logSlowQueryBySlf4j(thresholdMillis, TimeUnit.MILLISECONDS, SLF4JLogLevel.WARN, SLOW_QUERY_LOGGER)
+                        .countQuery()
+                        .build();
+            }
+        };
+    }
+}
@@ -0,0 +1,109 @@
+package org.dmitrysulman.spring.secondboot.config;
+
+import org.dmitrysulman.spring.secondboot.services.PageCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+@Component
+public class PageCacheFilter extends OncePerRequestFilter {
+
+    public static final String CACHE_HEADER = "X-Page-Cache";
+
+    private static final String TAGS_ATTRIBUTE = PageCacheFilter.class.getName() + ".tags";
+    private static final Pattern CACHEABLE_PATH = Pattern.compile("/books(/\\d+)?/?");
+    private static final String[] KEY_PARAMETERS = {"page", "books_per_page", "sort_by_year", "cursor"};
+
+    private final PageCache pageCache;
+
+    @Autowired
+    public PageCacheFilter(PageCache pageCache) {
+        this.pageCache = pageCache;
+    }
+
+    public static void tag(HttpServletRequest request, String... tags) {
+        @SuppressWarnings("unchecked")
+        Set<String> current = (Set<String>) request.getAttribute(TAGS_ATTRIBUTE);
+        if (Objects.isNull(current)) {
+            current = new HashSet<>();
+            request.setAttribute(TAGS_ATTRIBUTE, current);
+        }
+        Collections.addAll(current, tags);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !pageCache.isEnabled()
+                || !request.getMethod().equals("GET")
+                || !CACHEABLE_PATH.matcher(path(request)).matches();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String key = key(request);
+        PageCache.Page page = pageCache.get(key);
+        if (Objects.nonNull(page)) {
+            response.setHeader(CACHE_HEADER, "HIT");
+            response.setContentType(page.getContentType());
+            response.setContentLength(page.getBody().length);
+            response.getOutputStream().write(page.getBody());
+            return;
+        }
+
+        long generation = pageCache.generation();
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+        wrapper.setHeader(CACHE_HEADER, "MISS");
+        // A lagging replica would otherwise leave a stale page cached until the next change to its rows
+        boolean pinned = PrimaryPinning.pin();
+        try {
+            chain.doFilter(request, wrapper);
+        } finally {
+            PrimaryPinning.restore(pinned);
+        }
+        @SuppressWarnings("unchecked")
+        Set<String> tags = (Set<String>) request.getAttribute(TAGS_ATTRIBUTE);
+        if (wrapper.getStatus() == HttpStatus.OK.value() && Objects.nonNull(tags)) {
+            pageCache.put(key, new PageCache.Page(wrapper.getContentType(), wrapper.getContentAsByteArray(),
+                    Set.copyOf(tags)), generation);
+        }
+        wrapper.copyBodyToResponse();
+    }
+
+    private static String key(HttpServletRequest request) {
+        String path = path(request);
+        if (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        if (!path.equals("/books")) {
+            return path;
+        }
+        StringBuilder key = new StringBuilder(path);
+        char separator = '?';
+        for (String parameter : KEY_PARAMETERS) {
+            String value = request.getParameter(parameter);
+            if (Objects.nonNull(value)) {
+                key.append(separator).append(parameter).append('=').append(value);
+                separator = '&';
+            }
+        }
+        return key.toString();
+    }
+
+    private static String path(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+}
@@ -0,0 +1,50 @@
+package org.dmitrysulman.spring.secondboot.config;
+
+import java.util.Objects;
+
+public final class PrimaryPinning {
+
+    private static final ThreadLocal<Boolean> PINNED = new ThreadLocal<>();
+    private static final ThreadLocal<Runnable> ON_WRITE = new ThreadLocal<>();
+
+    private PrimaryPinning() {
+    }
+
+    public static boolean isPinned() {
+        return Boolean.TRUE.equals(PINNED.get());
+    }
+
+    // Routes the rest of the request to the primary without pinning the client; returns the previous state
+    static boolean pin() {
+        boolean pinned = isPinned();
+        PINNED.set(true);
+        return pinned;
+    }
+
+    static void restore(boolean pinned) {
+        if (pinned) {
+            PINNED.set(true);
+        } else {
+            PINNED.remove();
+        }
+    }
+
+    static void begin(boolean pinned, Runnable onWrite) {
+        PINNED.set(pinned);
+        ON_WRITE.set(onWrite);
+    }
+
+    static void end() {
+        PINNED.remove();
+        ON_WRITE.remove();
+    }
+
+    static void recordWrite() {
+        Runnable onWrite = ON_WRITE.get();
+        if (Objects.nonNull(onWrite)) {
+            ON_WRITE.remove();
+            PINNED.set(true);
+            onWrite.run();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package org.dmitrysulman.spring.secondboot.config;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Objects;
+
+public class PrimaryPinningFilter extends OncePerRequestFilter {
+
+    public static final String COOKIE_NAME = "library-primary";
+
+    private final long windowMillis;
+
+    public PrimaryPinningFilter(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        PrimaryPinning.begin(isPinned(request), () -> {
+            Cookie cookie = new Cookie(COOKIE_NAME, String.valueOf(System.currentTimeMillis() + windowMillis));
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            cookie.setMaxAge((int) Math.max(1, windowMillis / 1000));
+            response.addCookie(cookie);
+        });
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            PrimaryPinning.end();
+        }
+    }
+
+    private static boolean isPinned(HttpServletRequest request) {
+        if (Objects.isNull(request.getCookies())) {
+            return false;
+        }
+        for (Cookie cookie : request.getCookies()) {
+            if (cookie.getName().equals(COOKIE_NAME)) {
+                try {
+                    return Long.parseLong(cookie.getValue()) > System.currentTimeMillis();
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+}
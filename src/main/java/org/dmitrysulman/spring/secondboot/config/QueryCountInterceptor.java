@@ -0,0 +1,40 @@
+package org.dmitrysulman.spring.secondboot.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.ttddyy.dsproxy.QueryCountHolder;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Objects;
+
+public class QueryCountInterceptor implements HandlerInterceptor {
+
+    public static final String METRIC_NAME = "library.requests.queries";
+
+    private final MeterRegistry meterRegistry;
+
+    public QueryCountInterceptor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        QueryCountHolder.clear();
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        DistributionSummary.builder(METRIC_NAME)
+                .description("JDBC statements executed per request")
+                .tag("method", request.getMethod())
+                .tag("uri", Objects.isNull(pattern) ? "UNKNOWN" : pattern.toString())
+                .register(meterRegistry)
+                .record(QueryCountHolder.getGrandTotal().getTotal());
+        QueryCountHolder.clear();
+    }
+}
@@ -0,0 +1,71 @@
+package org.dmitrysulman.spring.secondboot.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+@Configuration
+@ConditionalOnProperty("library.replicas.urls")
+public class ReplicaRoutingConfig {
+
+    @Bean
+    public DataSource dataSource(DataSourceProperties properties,
+                                 @Value("${library.replicas.urls}") List<String> urls,
+                                 @Value("${library.replicas.username:${spring.datasource.username:}}") String username,
+                                 @Value("${library.replicas.password:${spring.datasource.password:}}") String password,
+                                 @Value("${library.replicas.strategy:round-robin}") String strategy,
+                                 @Value("${library.replicas.connection-timeout-ms:1000}") long connectionTimeoutMillis,
+                                 @Value("${library.replicas.health-check-interval-ms:5000}") long healthCheckIntervalMillis) {
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        primary.setPoolName("primary");
+
+        List<HikariDataSource> replicas = new ArrayList<>();
+        for (int i = 0; i < urls.size(); i++) {
+            HikariDataSource replica = new HikariDataSource();
+            replica.setPoolName("replica-" + i);
+            replica.setDriverClassName(properties.determineDriverClassName());
+            replica.setJdbcUrl(urls.get(i).trim());
+            replica.setUsername(username);
+            replica.setPassword(password);
+            replica.setReadOnly(true);
+            replica.setConnectionTimeout(connectionTimeoutMillis);
+            replica.setInitializationFailTimeout(-1);
+            replicas.add(replica);
+        }
+
+        return new ReplicaRoutingDataSource(primary, replicas,
+                ReplicaRoutingDataSource.Strategy.valueOf(strategy.toUpperCase(Locale.ROOT).replace('-', '_')),
+                healthCheckIntervalMillis);
+    }
+
+    @Bean
+    public MeterBinder connectionPoolMetrics(DataSource dataSource) throws SQLException {
+        List<HikariDataSource> pools = dataSource.unwrap(ReplicaRoutingDataSource.class).getPools();
+        return registry -> {
+            MicrometerMetricsTrackerFactory metrics = new MicrometerMetricsTrackerFactory(registry);
+            pools.forEach(pool -> pool.setMetricsTrackerFactory(metrics));
+        };
+    }
+
+    @Bean
+    public FilterRegistrationBean<PrimaryPinningFilter> primaryPinningFilter(
+            @Value("${library.replicas.pin-window-ms:5000}") long pinWindowMillis) {
+        FilterRegistrationBean<PrimaryPinningFilter> registration =
+                new FilterRegistrationBean<>(new PrimaryPinningFilter(pinWindowMillis));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 10);
+        return registration;
+    }
+}
@@ -0,0 +1,159 @@
+package org.dmitrysulman.spring.secondboot.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+public class ReplicaRoutingDataSource extends LazyConnectionDataSourceProxy implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+    private static final int VALIDATION_TIMEOUT_SECONDS = 1;
+
+    public enum Strategy {
+        ROUND_ROBIN, LEAST_CONNECTIONS
+    }
+
+    private final HikariDataSource primary;
+    private final List<Replica> replicas;
+    private final Strategy strategy;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ScheduledExecutorService healthChecker;
+
+    public ReplicaRoutingDataSource(HikariDataSource primary, List<HikariDataSource> replicas, Strategy strategy,
+                                    long healthCheckIntervalMillis) {
+        this.primary = primary;
+        this.replicas = replicas.stream().map(Replica::new).collect(Collectors.toList());
+        this.strategy = strategy;
+        setTargetDataSource(new Router());
+        afterPropertiesSet();
+        healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-health-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        healthChecker.scheduleWithFixedDelay(this::checkHealth, healthCheckIntervalMillis, healthCheckIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    public void checkHealth() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.dataSource.getConnection()) {
+                replica.setHealthy(connection.isValid(VALIDATION_TIMEOUT_SECONDS));
+            } catch (SQLException e) {
+                replica.setHealthy(false);
+            }
+        }
+    }
+
+    public List<HikariDataSource> getPools() {
+        List<HikariDataSource> pools = new ArrayList<>();
+        pools.add(primary);
+        replicas.forEach(replica -> pools.add(replica.dataSource));
+        return pools;
+    }
+
+    @Override
+    public void close() {
+        healthChecker.shutdownNow();
+        replicas.forEach(replica -> replica.dataSource.close());
+        primary.close();
+    }
+
+    private Replica choose() {
+        List<Replica> healthy = replicas.stream().filter(replica -> replica.healthy).collect(Collectors.toList());
+        if (healthy.isEmpty()) {
+            return null;
+        }
+        if (strategy == Strategy.LEAST_CONNECTIONS) {
+            return healthy.stream().min(Comparator.comparingInt(Replica::activeConnections)).orElseThrow();
+        }
+        return healthy.get(Math.floorMod(next.getAndIncrement(), healthy.size()));
+    }
+
+    private class Router extends AbstractDataSource {
+        @Override
+        public Connection getConnection() throws SQLException {
+            return route(DataSource::getConnection);
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return route(target -> target.getConnection(username, password));
+        }
+
+        private Connection route(ConnectionSource source) throws SQLException {
+            if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+                if (TransactionSynchronizationManager.isActualTransactionActive()) {
+                    PrimaryPinning.recordWrite();
+                }
+                return source.open(primary);
+            }
+            Replica replica = PrimaryPinning.isPinned() ? null : choose();
+            if (Objects.isNull(replica)) {
+                return source.open(primary);
+            }
+            try {
+                Connection connection = source.open(replica.dataSource);
+                skipCachePuts();
+                return connection;
+            } catch (SQLException e) {
+                replica.setHealthy(false);
+                return source.open(primary);
+            }
+        }
+
+        // Rows from a replica may lag the primary, so the transaction may read the second-level cache but not fill it
+        private void skipCachePuts() {
+            for (Object resource : TransactionSynchronizationManager.getResourceMap().values()) {
+                if (resource instanceof EntityManagerHolder) {
+                    ((EntityManagerHolder) resource).getEntityManager().unwrap(Session.class).setCacheMode(CacheMode.GET);
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface ConnectionSource {
+        Connection open(DataSource target) throws SQLException;
+    }
+
+    private static class Replica {
+        private final HikariDataSource dataSource;
+        private volatile boolean healthy = true;
+
+        private Replica(HikariDataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        private void setHealthy(boolean healthy) {
+            if (this.healthy != healthy) {
+                log.warn("Replica {} is now {}", dataSource.getPoolName(), healthy ? "healthy" : "unhealthy");
+            }
+            this.healthy = healthy;
+        }
+
+        private int activeConnections() {
+            return Objects.isNull(dataSource.getHikariPoolMXBean()) ? 0 : dataSource.getHikariPoolMXBean().getActiveConnections();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package org.dmitrysulman.spring.secondboot.controllers;
+
+import org.dmitrysulman.spring.secondboot.dto.BookChanges;
+import org.dmitrysulman.spring.secondboot.dto.BookView;
+import org.dmitrysulman.spring.secondboot.dto.LoanHistory;
+import org.dmitrysulman.spring.secondboot.services.BookService;
+import org.dmitrysulman.spring.secondboot.services.LoanHistoryService;
+import org.dmitrysulman.spring.secondboot.util.ChangeCursor;
+import org.dmitrysulman.spring.secondboot.util.LoanCursor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+import java.util.Objects;
+
+@RestController
+@RequestMapping("/api/books")
+public class BooksApiController {
+
+    private static final int MAX_LIMIT = 200;
+
+    private final BookService bookService;
+    private final LoanHistoryService loanHistoryService;
+
+    @Autowired
+    public BooksApiController(BookService bookService, LoanHistoryService loanHistoryService) {
+        this.bookService = bookService;
+        this.loanHistoryService = loanHistoryService;
+    }
+
+    @GetMapping()
+    public ResponseEntity<List<BookView>> index(@RequestParam(value = "after", defaultValue = "0") int after,
+                                                @RequestParam(value = "limit", defaultValue = "50") int limit,
+                                                WebRequest request) {
+        checkLimit(limit);
+
+        return bookService.findPageVersion(after, limit).respond(request, () -> bookService.findViews(after, limit));
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<BookView> show(@PathVariable("id") int id, WebRequest request) {
+        return bookService.findVersion(id)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Book not found"))
+                .respond(request, () -> bookService.findView(id)
+                        .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Book not found")));
+    }
+
+    @GetMapping("/changes")
+    public BookChanges changes(@RequestParam(value = "since", required = false) String since,
+                               @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        checkLimit(limit);
+        ChangeCursor cursor = ChangeCursor.first();
+        if (Objects.nonNull(since) && !since.isEmpty()) {
+            cursor = ChangeCursor.decode(since)
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "Bad cursor"));
+        }
+
+        return bookService.findChangesSince(cursor, limit);
+    }
+
+    @GetMapping("/{id}/loans")
+    public LoanHistory loans(@PathVariable("id") int id,
+                             @RequestParam(value = "before", required = false) String before,
+                             @RequestParam(value = "limit", defaultValue = "50") int limit) {
+        checkLimit(limit);
+
+        LoanCursor cursor = null;
+        if (Objects.nonNull(before) && !before.isEmpty()) {
+            cursor = LoanCursor.decode(before)
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "Bad cursor"));
+        }
+
+        return loanHistoryService.findByBookId(id, cursor, limit);
+    }
+
+    private static void checkLimit(int limit) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Bad request");
+        }
+    }
+}
@@ -1,10 +1,23 @@
 package org.dmitrysulman.spring.secondboot.controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dmitrysulman.spring.secondboot.config.PageCacheFilter;
+import org.dmitrysulman.spring.secondboot.dto.BookSuggestion;
+import org.dmitrysulman.spring.secondboot.dto.BookSummary;
+import org.dmitrysulman.spring.secondboot.dto.BulkLoanRequest;
+import org.dmitrysulman.spring.secondboot.dto.BulkLoanResult;
 import org.dmitrysulman.spring.secondboot.models.Book;
 import org.dmitrysulman.spring.secondboot.models.Person;
 import org.dmitrysulman.spring.secondboot.services.BookService;
-import org.dmitrysulman.spring.secondboot.services.PersonService;
+import org.dmitrysulman.spring.secondboot.services.ImportService;
+import org.dmitrysulman.spring.secondboot.services.PageCache;
+import org.dmitrysulman.spring.secondboot.util.BookCursor;
+import org.dmitrysulman.spring.secondboot.util.CsvWriter;
+import org.dmitrysulman.spring.secondboot.util.KeysetPage;
+import org.dmitrysulman.spring.secondboot.util.NdjsonImportListener;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -12,7 +25,16 @@ import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 
@@ -20,35 +42,64 @@ import java.util.Optional;
 @RequestMapping("/books")
 public class BooksController {
 
+    private static final int MAX_SUGGESTIONS = 50;
+    private static final int MAX_BOOKS_PER_PAGE = 100;
+    private static final int PAGER_WINDOW = 3;
+
     private final BookService bookService;
-    private final PersonService personService;
+    private final ImportService importService;
+    private final ObjectMapper objectMapper;
 
     @Autowired
-    public BooksController(BookService bookService, PersonService personService) {
+    public BooksController(BookService bookService, ImportService importService, ObjectMapper objectMapper) {
         this.bookService = bookService;
-        this.personService = personService;
+        this.importService = importService;
+        this.objectMapper = objectMapper;
     }
 
     @GetMapping()
     public String index(@RequestParam(value = "page", required = false) Integer page,
                         @RequestParam(value = "books_per_page", required = false) Integer booksPerPage,
                         @RequestParam(value = "sort_by_year", required = false) Boolean sortByYear,
-                        Model model) {
-        model.addAttribute("bookPage", bookService.findAll(page, booksPerPage, sortByYear));
+                        @RequestParam(value = "cursor", required = false) String cursor,
+                        HttpServletRequest request, Model model) {
+        if (Objects.nonNull(cursor)) {
+            checkPaging(null, booksPerPage);
+            BookCursor bookCursor = BookCursor.first(Objects.nonNull(sortByYear) && sortByYear);
+            if (!cursor.isEmpty()) {
+                bookCursor = BookCursor.decode(cursor)
+                        .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "Bad cursor"));
+            }
+            KeysetPage<BookSummary> keysetPage = bookService.findAll(bookCursor, booksPerPage);
+            model.addAttribute("keysetPage", keysetPage);
+            model.addAttribute("books", keysetPage.getContent());
+        } else {
+            checkPaging(page, booksPerPage);
+            Slice<BookSummary> bookPage = bookService.findAll(page, booksPerPage, sortByYear);
+            model.addAttribute("bookPage", bookPage);
+            model.addAttribute("sortByYear", Objects.nonNull(sortByYear) && sortByYear);
+            model.addAttribute("books", bookPage.getContent());
+            int totalPages = bookService.estimateTotalPages(bookPage);
+            model.addAttribute("firstShownPage", Math.max(0, bookPage.getNumber() - PAGER_WINDOW));
+            model.addAttribute("lastShownPage", Math.min(totalPages - 1, bookPage.getNumber() + PAGER_WINDOW));
+        }
+        PageCacheFilter.tag(request, PageCache.BOOKS_TAG);
+
         return "books/index";
     }
 
     @GetMapping("/{id}")
-    public String show(@PathVariable("id") int id, Model model, @ModelAttribute("person") Person person) {
+    public String show(@PathVariable("id") int id, Model model, @ModelAttribute("person") Person person,
+                       HttpServletRequest request) {
         Optional<Book> book = bookService.findOne(id);
         if (book.isEmpty()) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Book not found");
         } else {
+            PageCacheFilter.tag(request, PageCache.bookTag(id));
             Person bookOwner =  book.get().getPerson();
             if (Objects.nonNull(bookOwner)) {
+                PageCacheFilter.tag(request, PageCache.personTag(bookOwner.getId()));
                 model.addAttribute("owner", bookOwner);
-            } else {
-                model.addAttribute("people", personService.findAll());
             }
             model.addAttribute("book", book.get());
         }
@@ -108,8 +159,13 @@ public class BooksController {
 
     @PostMapping("/{id}/assign")
     public String assign(@PathVariable("id") int id, @ModelAttribute("person") Person person) {
-        if (!bookService.assign(id, person.getId())) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Bad request");
+        switch (bookService.assign(id, person.getId())) {
+            case ALREADY_TAKEN:
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "Book is already taken");
+            case BOOK_NOT_FOUND:
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Book not found");
+            case PERSON_NOT_FOUND:
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Bad request");
         }
 
         return "redirect:/books/" + id;
@@ -124,16 +180,108 @@ public class BooksController {
         return "redirect:/books/" + id;
     }
 
+    @PostMapping("/checkout")
+    @ResponseBody
+    public BulkLoanResult checkout(@RequestBody @Valid BulkLoanRequest request) {
+        return bookService.assignAll(request.getPersonId(), request.getBookIds())
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found"));
+    }
+
+    @PostMapping("/return")
+    @ResponseBody
+    public BulkLoanResult checkin(@RequestBody @Valid BulkLoanRequest request) {
+        return bookService.releaseAll(request.getPersonId(), request.getBookIds());
+    }
+
     @GetMapping("/search")
-    public String search(@RequestParam(value = "text", required = false) String text, Model model) {
+    public String search(@RequestParam(value = "text", required = false) String text,
+                         @RequestParam(value = "page", required = false) Integer page,
+                         @RequestParam(value = "books_per_page", required = false) Integer booksPerPage,
+                         Model model) {
+        checkPaging(page, booksPerPage);
         if (Objects.nonNull(text)) {
             if (text.equals("")) {
                 return "redirect:/books/search";
             }
             model.addAttribute("text", text);
-            model.addAttribute("books", bookService.findByTitleStartingWith(text));
+            model.addAttribute("books", bookService.search(text, page, booksPerPage));
         }
 
         return "/books/search";
     }
+
+    @GetMapping("/autocomplete")
+    @ResponseBody
+    public List<BookSuggestion> autocomplete(@RequestParam("text") String text,
+                                             @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        if (limit < 1 || limit > MAX_SUGGESTIONS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Bad request");
+        }
+
+        return bookService.suggestByTitle(text, limit);
+    }
+
+    @GetMapping("/overdue")
+    public void overdue(HttpServletResponse response) throws IOException {
+        response.setContentType("text/csv;charset=UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"overdue.csv\"");
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        Writer writer = response.getWriter();
+        CsvWriter csv = new CsvWriter(writer);
+        csv.writeRow("book_id", "title", "author", "person_id", "full_name", "date_taken");
+        bookService.forEachOverdueLoan(loan -> csv.writeRow(loan.getBookId(), loan.getTitle(), loan.getAuthor(),
+                loan.getPersonId(), loan.getFullName(), dateFormat.format(loan.getDateTaken())));
+        writer.flush();
+    }
+
+    @GetMapping("/export")
+    public void export(@RequestParam(value = "format", defaultValue = "csv") String format,
+                       HttpServletResponse response) throws IOException {
+        Writer writer;
+        if (format.equals("ndjson")) {
+            response.setContentType(ImportService.APPLICATION_NDJSON + ";charset=UTF-8");
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"books.ndjson\"");
+            writer = response.getWriter();
+            bookService.forEachBook(book -> {
+                Map<String, Object> line = new LinkedHashMap<>();
+                line.put("id", book.getId());
+                line.put("title", book.getTitle());
+                line.put("author", book.getAuthor());
+                line.put("year", book.getYear());
+                line.put("person_id", Objects.isNull(book.getPerson()) ? null : book.getPerson().getId());
+                try {
+                    writer.write(objectMapper.writeValueAsString(line));
+                    writer.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } else if (format.equals("csv")) {
+            response.setContentType("text/csv;charset=UTF-8");
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"books.csv\"");
+            writer = response.getWriter();
+            CsvWriter csv = new CsvWriter(writer);
+            csv.writeRow("id", "title", "author", "year", "person_id");
+            bookService.forEachBook(book -> csv.writeRow(book.getId(), book.getTitle(), book.getAuthor(), book.getYear(),
+                    Objects.isNull(book.getPerson()) ? null : book.getPerson().getId()));
+        } else {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unsupported format");
+        }
+        writer.flush();
+    }
+
+    @PostMapping(value = "/import", consumes = {ImportService.TEXT_CSV, ImportService.APPLICATION_NDJSON})
+    public void importBooks(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        ImportService.Format format = ImportService.Format.fromContentType(request.getContentType());
+        response.setContentType(ImportService.APPLICATION_NDJSON + ";charset=UTF-8");
+        importService.importBooks(request.getInputStream(), format,
+                new NdjsonImportListener(objectMapper, response.getWriter()));
+    }
+
+    private static void checkPaging(Integer page, Integer booksPerPage) {
+        if (Objects.nonNull(page) && page < 0
+                || Objects.nonNull(booksPerPage) && (booksPerPage < 1 || booksPerPage > MAX_BOOKS_PER_PAGE)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Bad request");
+        }
+    }
 }
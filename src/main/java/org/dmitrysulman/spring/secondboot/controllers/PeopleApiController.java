@@ -0,0 +1,74 @@
+package org.dmitrysulman.spring.secondboot.controllers;
+
+import org.dmitrysulman.spring.secondboot.dto.LoanHistory;
+import org.dmitrysulman.spring.secondboot.dto.PersonBooks;
+import org.dmitrysulman.spring.secondboot.dto.PersonView;
+import org.dmitrysulman.spring.secondboot.services.LoanHistoryService;
+import org.dmitrysulman.spring.secondboot.services.PersonService;
+import org.dmitrysulman.spring.secondboot.util.LoanCursor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Objects;
+
+@RestController
+@RequestMapping("/api/people")
+public class PeopleApiController {
+
+    private static final int MAX_LIMIT = 200;
+
+    private final PersonService personService;
+    private final LoanHistoryService loanHistoryService;
+
+    @Autowired
+    public PeopleApiController(PersonService personService, LoanHistoryService loanHistoryService) {
+        this.personService = personService;
+        this.loanHistoryService = loanHistoryService;
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<PersonView> show(@PathVariable("id") int id, WebRequest request) {
+        return personService.findVersion(id)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found"))
+                .respond(request, () -> personService.findView(id)
+                        .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found")));
+    }
+
+    @GetMapping("/{id}/books")
+    public PersonBooks books(@PathVariable("id") int id,
+                             @RequestParam(value = "after", defaultValue = "0") int after,
+                             @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        checkLimit(limit);
+
+        return personService.findBooks(id, after, limit);
+    }
+
+    @GetMapping("/{id}/loans")
+    public LoanHistory loans(@PathVariable("id") int id,
+                             @RequestParam(value = "before", required = false) String before,
+                             @RequestParam(value = "limit", defaultValue = "50") int limit) {
+        checkLimit(limit);
+
+        LoanCursor cursor = null;
+        if (Objects.nonNull(before) && !before.isEmpty()) {
+            cursor = LoanCursor.decode(before)
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "Bad cursor"));
+        }
+
+        return loanHistoryService.findByPersonId(id, cursor, limit);
+    }
+
+    private static void checkLimit(int limit) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Bad request");
+        }
+    }
+}
@@ -1,9 +1,14 @@
 package org.dmitrysulman.spring.secondboot.controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dmitrysulman.spring.secondboot.dto.PersonSuggestion;
 import org.dmitrysulman.spring.secondboot.models.Person;
+import org.dmitrysulman.spring.secondboot.services.ImportService;
 import org.dmitrysulman.spring.secondboot.services.PersonService;
+import org.dmitrysulman.spring.secondboot.util.NdjsonImportListener;
 import org.dmitrysulman.spring.secondboot.util.PersonValidator;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -11,37 +16,71 @@ import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 
 @Controller
 @RequestMapping("/people")
 public class PeopleController {
 
+    private static final int MAX_SUGGESTIONS = 50;
+    private static final int MAX_PER_PAGE = 100;
+
     private final PersonService personService;
     private final PersonValidator personValidator;
+    private final ImportService importService;
+    private final ObjectMapper objectMapper;
 
     @Autowired
-    public PeopleController(PersonService personService, PersonValidator personValidator) {
+    public PeopleController(PersonService personService, PersonValidator personValidator,
+                            ImportService importService, ObjectMapper objectMapper) {
         this.personService = personService;
         this.personValidator = personValidator;
+        this.importService = importService;
+        this.objectMapper = objectMapper;
     }
 
     @GetMapping()
-    public String index(Model model) {
-        model.addAttribute("people", personService.findAll());
+    public String index(@RequestParam(value = "text", required = false) String text,
+                        @RequestParam(value = "page", required = false) Integer page,
+                        @RequestParam(value = "people_per_page", required = false) Integer peoplePerPage,
+                        Model model) {
+        checkPaging(page, peoplePerPage);
+        model.addAttribute("text", text);
+        model.addAttribute("people", personService.findByFullNameStartingWith(text, page, peoplePerPage));
 
         return "people/index";
     }
 
+    @GetMapping("/lookup")
+    @ResponseBody
+    public List<PersonSuggestion> lookup(@RequestParam("text") String text,
+                                         @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        if (limit < 1 || limit > MAX_SUGGESTIONS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Bad request");
+        }
+
+        return personService.findByFullNameStartingWith(text, 0, limit).getContent();
+    }
+
     @GetMapping("/{id}")
-    public String show(@PathVariable("id") int id, Model model) {
+    public String show(@PathVariable("id") int id,
+                       @RequestParam(value = "page", required = false) Integer page,
+                       @RequestParam(value = "books_per_page", required = false) Integer booksPerPage,
+                       Model model) {
+        checkPaging(page, booksPerPage);
         Optional<Person> person = personService.findOne(id);
         if (person.isEmpty()) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found");
         } else {
             model.addAttribute("person", person.get());
-            model.addAttribute("books", personService.getBooksOfPersonById(person.get().getId()));
+            model.addAttribute("loanSummary", personService.getLoanSummary(id));
+            model.addAttribute("books", personService.getBooksOfPersonById(id, page, booksPerPage));
         }
 
         return "people/show";
@@ -60,7 +99,16 @@ public class PeopleController {
         if (bindingResult.hasErrors()) {
             return "people/add";
         }
-        int id = personService.save(person);
+        int id;
+        try {
+            id = personService.save(person);
+        } catch (DataIntegrityViolationException e) {
+            if (!PersonService.isDuplicateName(e)) {
+                throw e;
+            }
+            personValidator.rejectDuplicate(bindingResult);
+            return "people/add";
+        }
 
         return "redirect:/people/" + id;
     }
@@ -83,8 +131,16 @@ public class PeopleController {
         if (bindingResult.hasErrors()) {
             return "people/edit";
         }
-        if (!personService.update(id, person)) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Bad request");
+        try {
+            if (!personService.update(id, person)) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Bad request");
+            }
+        } catch (DataIntegrityViolationException e) {
+            if (!PersonService.isDuplicateName(e)) {
+                throw e;
+            }
+            personValidator.rejectDuplicate(bindingResult);
+            return "people/edit";
         }
 
         return "redirect:/people/" + id;
@@ -98,4 +154,19 @@ public class PeopleController {
 
         return "redirect:/people/";
     }
+
+    @PostMapping(value = "/import", consumes = {ImportService.TEXT_CSV, ImportService.APPLICATION_NDJSON})
+    public void importPeople(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        ImportService.Format format = ImportService.Format.fromContentType(request.getContentType());
+        response.setContentType(ImportService.APPLICATION_NDJSON + ";charset=UTF-8");
+        importService.importPeople(request.getInputStream(), format,
+                new NdjsonImportListener(objectMapper, response.getWriter()));
+    }
+
+    private static void checkPaging(Integer page, Integer perPage) {
+        if (Objects.nonNull(page) && page < 0
+                || Objects.nonNull(perPage) && (perPage < 1 || perPage > MAX_PER_PAGE)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Bad request");
+        }
+    }
 }
@@ -0,0 +1,27 @@
+package org.dmitrysulman.spring.secondboot.dto;
+
+import java.util.List;
+
+public class BookChanges {
+    private final List<BookView> changes;
+    private final List<Integer> deleted;
+    private final String next;
+
+    public BookChanges(List<BookView> changes, List<Integer> deleted, String next) {
+        this.changes = changes;
+        this.deleted = deleted;
+        this.next = next;
+    }
+
+    public List<BookView> getChanges() {
+        return changes;
+    }
+
+    public List<Integer> getDeleted() {
+        return deleted;
+    }
+
+    public String getNext() {
+        return next;
+    }
+}
@@ -0,0 +1,37 @@
+package org.dmitrysulman.spring.secondboot.dto;
+
+public class BookListing {
+    private final int id;
+    private final String title;
+    private final String author;
+    private final int year;
+    private final String ownerName;
+
+    public BookListing(int id, String title, String author, int year, String ownerName) {
+        this.id = id;
+        this.title = title;
+        this.author = author;
+        this.year = year;
+        this.ownerName = ownerName;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public int getYear() {
+        return year;
+    }
+
+    public String getOwnerName() {
+        return ownerName;
+    }
+}
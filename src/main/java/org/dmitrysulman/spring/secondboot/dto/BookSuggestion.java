@@ -0,0 +1,19 @@
+package org.dmitrysulman.spring.secondboot.dto;
+
+public class BookSuggestion {
+    private final int id;
+    private final String title;
+
+    public BookSuggestion(int id, String title) {
+        this.id = id;
+        this.title = title;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+}
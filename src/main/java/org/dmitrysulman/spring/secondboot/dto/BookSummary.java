@@ -0,0 +1,31 @@
+package org.dmitrysulman.spring.secondboot.dto;
+
+public class BookSummary {
+    private final int id;
+    private final String title;
+    private final String author;
+    private final int year;
+
+    public BookSummary(int id, String title, String author, int year) {
+        this.id = id;
+        this.title = title;
+        this.author = author;
+        this.year = year;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public int getYear() {
+        return year;
+    }
+}
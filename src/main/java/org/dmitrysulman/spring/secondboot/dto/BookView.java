@@ -0,0 +1,58 @@
+package org.dmitrysulman.spring.secondboot.dto;
+
+import java.util.Date;
+
+public class BookView {
+    private final int id;
+    private final String title;
+    private final String author;
+    private final int year;
+    private final Integer personId;
+    private final int version;
+    private final Date updatedAt;
+    private final long changeXid;
+
+    public BookView(int id, String title, String author, int year, Integer personId, int version, Date updatedAt,
+                    long changeXid) {
+        this.id = id;
+        this.title = title;
+        this.author = author;
+        this.year = year;
+        this.personId = personId;
+        this.version = version;
+        this.updatedAt = updatedAt;
+        this.changeXid = changeXid;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public int getYear() {
+        return year;
+    }
+
+    public Integer getPersonId() {
+        return personId;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public Date getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public long getChangeXid() {
+        return changeXid;
+    }
+}
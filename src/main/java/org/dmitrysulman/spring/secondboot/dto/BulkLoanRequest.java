@@ -0,0 +1,31 @@
+package org.dmitrysulman.spring.secondboot.dto;
+
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.util.List;
+
+public class BulkLoanRequest {
+    @NotNull(message = "Person should not be empty")
+    private Integer personId;
+
+    @NotEmpty(message = "Books should not be empty")
+    @Size(max = 1000, message = "At most 1000 books per request")
+    private List<@NotNull Integer> bookIds;
+
+    public Integer getPersonId() {
+        return personId;
+    }
+
+    public void setPersonId(Integer personId) {
+        this.personId = personId;
+    }
+
+    public List<Integer> getBookIds() {
+        return bookIds;
+    }
+
+    public void setBookIds(List<Integer> bookIds) {
+        this.bookIds = bookIds;
+    }
+}
@@ -0,0 +1,39 @@
+package org.dmitrysulman.spring.secondboot.dto;
+
+import java.util.List;
+
+public class BulkLoanResult {
+    private final List<Integer> succeeded;
+    private final List<Rejection> rejected;
+
+    public BulkLoanResult(List<Integer> succeeded, List<Rejection> rejected) {
+        this.succeeded = succeeded;
+        this.rejected = rejected;
+    }
+
+    public List<Integer> getSucceeded() {
+        return succeeded;
+    }
+
+    public List<Rejection> getRejected() {
+        return rejected;
+    }
+
+    public static class Rejection {
+        private final int bookId;
+        private final String reason;
+
+        public Rejection(int bookId, String reason) {
+            this.bookId = bookId;
+            this.reason = reason;
+        }
+
+        public int getBookId() {
+            return bookId;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package org.dmitrysulman.spring.secondboot.dto;
+
+public class ImportProgress {
+    private final long processed;
+    private final long imported;
+    private final long rejected;
+
+    public ImportProgress(long processed, long imported, long rejected) {
+        this.processed = processed;
+        this.imported = imported;
+        this.rejected = rejected;
+    }
+
+    public long getProcessed() {
+        return processed;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+}
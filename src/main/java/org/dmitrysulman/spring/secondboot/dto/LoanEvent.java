@@ -0,0 +1,43 @@
+package org.dmitrysulman.spring.secondboot.dto;
+
+import java.util.Date;
+
+public class LoanEvent {
+    public enum Type {
+        ASSIGNED, RELEASED
+    }
+
+    private final long id;
+    private final int bookId;
+    private final int personId;
+    private final Type type;
+    private final Date occurredAt;
+
+    public LoanEvent(long id, int bookId, int personId, Type type, Date occurredAt) {
+        this.id = id;
+        this.bookId = bookId;
+        this.personId = personId;
+        this.type = type;
+        this.occurredAt = occurredAt;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getBookId() {
+        return bookId;
+    }
+
+    public int getPersonId() {
+        return personId;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Date getOccurredAt() {
+        return occurredAt;
+    }
+}
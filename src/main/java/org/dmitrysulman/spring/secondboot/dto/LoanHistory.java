@@ -0,0 +1,21 @@
+package org.dmitrysulman.spring.secondboot.dto;
+
+import java.util.List;
+
+public class LoanHistory {
+    private final List<LoanEvent> events;
+    private final String next;
+
+    public LoanHistory(List<LoanEvent> events, String next) {
+        this.events = events;
+        this.next = next;
+    }
+
+    public List<LoanEvent> getEvents() {
+        return events;
+    }
+
+    public String getNext() {
+        return next;
+    }
+}
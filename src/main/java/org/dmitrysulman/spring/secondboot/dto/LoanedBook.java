@@ -0,0 +1,37 @@
+package org.dmitrysulman.spring.secondboot.dto;
+
+public class LoanedBook {
+    private final int id;
+    private final String title;
+    private final String author;
+    private final int year;
+    private final boolean overdue;
+
+    public LoanedBook(int id, String title, String author, int year, boolean overdue) {
+        this.id = id;
+        this.title = title;
+        this.author = author;
+        this.year = year;
+        this.overdue = overdue;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public int getYear() {
+        return year;
+    }
+
+    public boolean isOverdue() {
+        return overdue;
+    }
+}
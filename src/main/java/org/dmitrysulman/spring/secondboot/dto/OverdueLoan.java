@@ -0,0 +1,45 @@
+package org.dmitrysulman.spring.secondboot.dto;
+
+import java.util.Date;
+
+public class OverdueLoan {
+    private final int bookId;
+    private final String title;
+    private final String author;
+    private final int personId;
+    private final String fullName;
+    private final Date dateTaken;
+
+    public OverdueLoan(int bookId, String title, String author, int personId, String fullName, Date dateTaken) {
+        this.bookId = bookId;
+        this.title = title;
+        this.author = author;
+        this.personId = personId;
+        this.fullName = fullName;
+        this.dateTaken = dateTaken;
+    }
+
+    public int getBookId() {
+        return bookId;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public int getPersonId() {
+        return personId;
+    }
+
+    public String getFullName() {
+        return fullName;
+    }
+
+    public Date getDateTaken() {
+        return dateTaken;
+    }
+}
@@ -0,0 +1,21 @@
+package org.dmitrysulman.spring.secondboot.dto;
+
+import java.util.List;
+
+public class PersonBooks {
+    private final List<BookSummary> books;
+    private final String next;
+
+    public PersonBooks(List<BookSummary> books, String next) {
+        this.books = books;
+        this.next = next;
+    }
+
+    public List<BookSummary> getBooks() {
+        return books;
+    }
+
+    public String getNext() {
+        return next;
+    }
+}
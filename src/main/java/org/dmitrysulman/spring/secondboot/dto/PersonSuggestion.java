@@ -0,0 +1,19 @@
+package org.dmitrysulman.spring.secondboot.dto;
+
+public class PersonSuggestion {
+    private final int id;
+    private final String fullName;
+
+    public PersonSuggestion(int id, String fullName) {
+        this.id = id;
+        this.fullName = fullName;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getFullName() {
+        return fullName;
+    }
+}
@@ -0,0 +1,45 @@
+package org.dmitrysulman.spring.secondboot.dto;
+
+import java.util.List;
+
+public class PersonView {
+    private final int id;
+    private final String fullName;
+    private final int yearOfBirth;
+    private final int version;
+    private final List<BookSummary> books;
+    private final String booksNext;
+
+    public PersonView(int id, String fullName, int yearOfBirth, int version, PersonBooks books) {
+        this.id = id;
+        this.fullName = fullName;
+        this.yearOfBirth = yearOfBirth;
+        this.version = version;
+        this.books = books.getBooks();
+        this.booksNext = books.getNext();
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getFullName() {
+        return fullName;
+    }
+
+    public int getYearOfBirth() {
+        return yearOfBirth;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public List<BookSummary> getBooks() {
+        return books;
+    }
+
+    public String getBooksNext() {
+        return booksNext;
+    }
+}
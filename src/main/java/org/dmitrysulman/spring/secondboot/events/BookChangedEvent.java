@@ -0,0 +1,63 @@
+package org.dmitrysulman.spring.secondboot.events;
+
+import org.dmitrysulman.spring.secondboot.models.Book;
+
+public class BookChangedEvent {
+    public enum Type {
+        CREATED, UPDATED, DELETED, ASSIGNED, RELEASED
+    }
+
+    private final int bookId;
+    private final Type type;
+    private final Integer personId;
+    private final String title;
+    private final String author;
+
+    private BookChangedEvent(int bookId, Type type, Integer personId, String title, String author) {
+        this.bookId = bookId;
+        this.type = type;
+        this.personId = personId;
+        this.title = title;
+        this.author = author;
+    }
+
+    public static BookChangedEvent created(Book book) {
+        return new BookChangedEvent(book.getId(), Type.CREATED, null, book.getTitle(), book.getAuthor());
+    }
+
+    public static BookChangedEvent updated(Book book) {
+        return new BookChangedEvent(book.getId(), Type.UPDATED, null, book.getTitle(), book.getAuthor());
+    }
+
+    public static BookChangedEvent deleted(int bookId) {
+        return new BookChangedEvent(bookId, Type.DELETED, null, null, null);
+    }
+
+    public static BookChangedEvent assigned(int bookId, int personId) {
+        return new BookChangedEvent(bookId, Type.ASSIGNED, personId, null, null);
+    }
+
+    public static BookChangedEvent released(int bookId, int personId) {
+        return new BookChangedEvent(bookId, Type.RELEASED, personId, null, null);
+    }
+
+    public int getBookId() {
+        return bookId;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Integer getPersonId() {
+        return personId;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+}
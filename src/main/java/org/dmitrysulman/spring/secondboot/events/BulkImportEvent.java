@@ -0,0 +1,27 @@
+package org.dmitrysulman.spring.secondboot.events;
+
+import java.util.Collections;
+import java.util.List;
+
+public class BulkImportEvent {
+    private final Class<?> entityType;
+    private final List<?> entities;
+
+    public BulkImportEvent(Class<?> entityType, List<?> entities) {
+        this.entityType = entityType;
+        this.entities = List.copyOf(entities);
+    }
+
+    public Class<?> getEntityType() {
+        return entityType;
+    }
+
+    public int getImported() {
+        return entities.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> List<T> getEntities(Class<T> type) {
+        return entityType == type ? (List<T>) entities : Collections.emptyList();
+    }
+}
@@ -0,0 +1,31 @@
+package org.dmitrysulman.spring.secondboot.events;
+
+public class PersonChangedEvent {
+    public enum Type {
+        UPDATED, DELETED
+    }
+
+    private final int personId;
+    private final Type type;
+
+    private PersonChangedEvent(int personId, Type type) {
+        this.personId = personId;
+        this.type = type;
+    }
+
+    public static PersonChangedEvent updated(int personId) {
+        return new PersonChangedEvent(personId, Type.UPDATED);
+    }
+
+    public static PersonChangedEvent deleted(int personId) {
+        return new PersonChangedEvent(personId, Type.DELETED);
+    }
+
+    public int getPersonId() {
+        return personId;
+    }
+
+    public Type getType() {
+        return type;
+    }
+}
@@ -1,5 +1,9 @@
 package org.dmitrysulman.spring.secondboot.models;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.UpdateTimestamp;
+
 import javax.persistence.*;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotEmpty;
@@ -7,6 +11,8 @@ import javax.validation.constraints.Size;
 import java.util.Date;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "book")
 @Table(name = "book")
 public class Book {
     @Id
@@ -32,7 +38,20 @@ public class Book {
     @Temporal(TemporalType.TIMESTAMP)
     private Date dateTaken;
 
-    @ManyToOne(cascade = {CascadeType.DETACH, CascadeType.PERSIST, CascadeType.REFRESH, CascadeType.MERGE})
+    @Version
+    @Column(name = "version", nullable = false)
+    private int version;
+
+    @UpdateTimestamp
+    @Column(name = "updated_at", nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date updatedAt;
+
+    // Assigned by a database trigger on every insert and update, so the value held here may be stale
+    @Column(name = "change_xid", insertable = false, updatable = false)
+    private long changeXid;
+
+    @ManyToOne(fetch = FetchType.LAZY, cascade = {CascadeType.DETACH, CascadeType.PERSIST, CascadeType.REFRESH, CascadeType.MERGE})
     @JoinColumn(name = "person_id")
     private Person person;
 
@@ -43,9 +62,6 @@ public class Book {
         this.year = year;
     }
 
-    @Transient
-    private Boolean isBookOverdue;
-
     public Book() {
     }
 
@@ -97,12 +113,23 @@ public class Book {
         this.dateTaken = dateTaken;
     }
 
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
+    public Date getUpdatedAt() {
+        return updatedAt;
+    }
 
-    public Boolean getBookOverdue() {
-        return isBookOverdue;
+    public void setUpdatedAt(Date updatedAt) {
+        this.updatedAt = updatedAt;
     }
 
-    public void setBookOverdue(Boolean bookOverdue) {
-        isBookOverdue = bookOverdue;
+    public long getChangeXid() {
+        return changeXid;
     }
 }
@@ -0,0 +1,31 @@
+package org.dmitrysulman.spring.secondboot.models;
+
+import org.hibernate.annotations.Immutable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+@Entity
+@Immutable
+@Table(name = "book_tombstone")
+public class BookTombstone {
+    @Id
+    @Column(name = "book_id")
+    private int bookId;
+
+    @Column(name = "change_xid")
+    private long changeXid;
+
+    public BookTombstone() {
+    }
+
+    public int getBookId() {
+        return bookId;
+    }
+
+    public long getChangeXid() {
+        return changeXid;
+    }
+}
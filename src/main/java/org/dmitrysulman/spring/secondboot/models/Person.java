@@ -1,13 +1,20 @@
 package org.dmitrysulman.spring.secondboot.models;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.UpdateTimestamp;
+
 import javax.persistence.*;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotEmpty;
 import javax.validation.constraints.Size;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "person")
 @Table(name = "person")
 public class Person {
     @Id
@@ -24,6 +31,16 @@ public class Person {
     @Column(name = "year_of_birth")
     private int yearOfBirth;
 
+    @Version
+    @Column(name = "version", nullable = false)
+    private int version;
+
+    @UpdateTimestamp
+    @Column(name = "updated_at", nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date updatedAt;
+
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "person-books")
     @OneToMany(mappedBy = "person", cascade = {CascadeType.DETACH, CascadeType.PERSIST, CascadeType.REFRESH, CascadeType.MERGE})
     private List<Book> books;
 
@@ -60,6 +77,22 @@ public class Person {
         this.yearOfBirth = yearOfBirth;
     }
 
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
+    public Date getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Date updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
     public List<Book> getBooks() {
         return books;
     }
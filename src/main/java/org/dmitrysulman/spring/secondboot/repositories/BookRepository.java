@@ -1,12 +1,165 @@
 package org.dmitrysulman.spring.secondboot.repositories;
 
+import org.dmitrysulman.spring.secondboot.dto.BookListing;
+import org.dmitrysulman.spring.secondboot.dto.BookSummary;
+import org.dmitrysulman.spring.secondboot.dto.BookView;
+import org.dmitrysulman.spring.secondboot.dto.LoanedBook;
+import org.dmitrysulman.spring.secondboot.dto.OverdueLoan;
 import org.dmitrysulman.spring.secondboot.models.Book;
+import org.dmitrysulman.spring.secondboot.models.BookTombstone;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_NATIVE_SPACES;
 
 @Repository
-public interface BookRepository extends JpaRepository<Book, Integer> {
-    List<Book> findByTitleStartingWithIgnoreCase(String title);
+public interface BookRepository extends JpaRepository<Book, Integer>, BookRepositoryCustom {
+    // A query space no entity maps to: Hibernate would otherwise evict the whole region of every entity and
+    // collection stored in the touched table. Callers soft-lock the affected rows through SecondLevelCacheEvictor instead.
+    String NATIVE_DML_SPACE = "native_dml";
+    // Transactions below the snapshot's xmin have all finished, so no change before it can still appear
+    String CHANGE_HORIZON = "function('txid_snapshot_xmin', function('txid_current_snapshot'))";
+
+    @Query("select new org.dmitrysulman.spring.secondboot.dto.BookSummary(b.id, b.title, b.author, b.year) from Book b")
+    Slice<BookSummary> findAllBy(Pageable pageable);
+
+    @Query("select new org.dmitrysulman.spring.secondboot.dto.BookListing(b.id, b.title, b.author, b.year, p.fullName) " +
+            "from Book b left join b.person p where b.id in :ids")
+    List<BookListing> findListingsByIdIn(@Param("ids") Collection<Integer> ids);
+
+    @Query("select new org.dmitrysulman.spring.secondboot.dto.BookSummary(b.id, b.title, b.author, b.year) from Book b " +
+            "where b.id > :id order by b.id")
+    List<BookSummary> findAfterId(@Param("id") int id, Pageable pageable);
+
+    @Query("select new org.dmitrysulman.spring.secondboot.dto.BookSummary(b.id, b.title, b.author, b.year) from Book b " +
+            "where b.id < :id order by b.id desc")
+    List<BookSummary> findBeforeId(@Param("id") int id, Pageable pageable);
+
+    @Query("select new org.dmitrysulman.spring.secondboot.dto.BookSummary(b.id, b.title, b.author, b.year) from Book b " +
+            "where b.year > :year or (b.year = :year and b.id > :id) order by b.year, b.id")
+    List<BookSummary> findAfterYearAndId(@Param("year") int year, @Param("id") int id, Pageable pageable);
+
+    @Query("select new org.dmitrysulman.spring.secondboot.dto.BookSummary(b.id, b.title, b.author, b.year) from Book b " +
+            "where b.year < :year or (b.year = :year and b.id < :id) order by b.year desc, b.id desc")
+    List<BookSummary> findBeforeYearAndId(@Param("year") int year, @Param("id") int id, Pageable pageable);
+
+    @Query("select new org.dmitrysulman.spring.secondboot.dto.LoanedBook(b.id, b.title, b.author, b.year, " +
+            "case when b.dateTaken < :overdueBefore then true else false end) " +
+            "from Book b where b.person.id = :personId order by b.dateTaken, b.id")
+    Slice<LoanedBook> findLoansByPersonId(@Param("personId") int personId, @Param("overdueBefore") Date overdueBefore,
+                                        Pageable pageable);
+
+    @Query("select count(b) as loans, coalesce(sum(case when b.dateTaken < :overdueBefore then 1 else 0 end), 0) as overdueLoans " +
+            "from Book b where b.person.id = :personId")
+    LoanSummary summarizeLoansByPersonId(@Param("personId") int personId, @Param("overdueBefore") Date overdueBefore);
+
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    @Query("select new org.dmitrysulman.spring.secondboot.dto.OverdueLoan(b.id, b.title, b.author, p.id, p.fullName, b.dateTaken) " +
+            "from Book b join b.person p where b.dateTaken < :overdueBefore order by b.dateTaken")
+    Stream<OverdueLoan> streamOverdueLoans(@Param("overdueBefore") Date overdueBefore);
+
+    @Query("select b.id as id, b.version as version, b.updatedAt as updatedAt from Book b where b.id = :id")
+    Optional<BookRevision> findRevisionById(@Param("id") int id);
+
+    @Query("select b.id as id, b.version as version, b.updatedAt as updatedAt from Book b where b.id > :id order by b.id")
+    List<BookRevision> findRevisionsAfterId(@Param("id") int id, Pageable pageable);
+
+    @Query("select new org.dmitrysulman.spring.secondboot.dto.BookView(b.id, b.title, b.author, b.year, b.person.id, b.version, b.updatedAt, b.changeXid) " +
+            "from Book b where b.id = :id")
+    Optional<BookView> findViewById(@Param("id") int id);
+
+    @Query("select new org.dmitrysulman.spring.secondboot.dto.BookView(b.id, b.title, b.author, b.year, b.person.id, b.version, b.updatedAt, b.changeXid) " +
+            "from Book b where b.id > :id order by b.id")
+    List<BookView> findViewsAfterId(@Param("id") int id, Pageable pageable);
+
+    @Query("select new org.dmitrysulman.spring.secondboot.dto.BookView(b.id, b.title, b.author, b.year, b.person.id, b.version, b.updatedAt, b.changeXid) " +
+            "from Book b where b.changeXid < " + CHANGE_HORIZON + " " +
+            "and (b.changeXid > :changeXid or (b.changeXid = :changeXid and b.id > :id)) order by b.changeXid, b.id")
+    List<BookView> findChangedSince(@Param("changeXid") long changeXid, @Param("id") int id, Pageable pageable);
+
+    @Query("select t from BookTombstone t where t.changeXid < " + CHANGE_HORIZON + " " +
+            "and (t.changeXid > :changeXid or (t.changeXid = :changeXid and t.bookId > :id)) order by t.changeXid, t.bookId")
+    List<BookTombstone> findDeletedSince(@Param("changeXid") long changeXid, @Param("id") int id, Pageable pageable);
+
+    @Query("select new org.dmitrysulman.spring.secondboot.dto.BookSummary(b.id, b.title, b.author, b.year) from Book b " +
+            "where b.person.id = :personId and b.id > :id order by b.id")
+    Slice<BookSummary> findSummariesByPersonIdAfterId(@Param("personId") int personId, @Param("id") int id, Pageable pageable);
+
+    @Modifying
+    @QueryHints(@QueryHint(name = HINT_NATIVE_SPACES, value = NATIVE_DML_SPACE))
+    @Query(value = "update book set person_id = :personId, date_taken = :dateTaken, version = version + 1, " +
+            "updated_at = current_timestamp where id = :id and person_id is null", nativeQuery = true)
+    int assignIfFree(@Param("id") int id, @Param("personId") int personId, @Param("dateTaken") Date dateTaken);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select b.id as id, b.person.id as personId from Book b where b.id in :ids")
+    List<BookHolder> lockHoldersByIdIn(@Param("ids") Collection<Integer> ids);
+
+    @Modifying
+    @QueryHints(@QueryHint(name = HINT_NATIVE_SPACES, value = NATIVE_DML_SPACE))
+    @Query(value = "update book set person_id = :personId, date_taken = :dateTaken, version = version + 1, " +
+            "updated_at = current_timestamp where id in (:ids)", nativeQuery = true)
+    int assignAll(@Param("ids") Collection<Integer> ids, @Param("personId") int personId, @Param("dateTaken") Date dateTaken);
+
+    @Modifying
+    @QueryHints(@QueryHint(name = HINT_NATIVE_SPACES, value = NATIVE_DML_SPACE))
+    @Query(value = "update book set person_id = null, date_taken = null, version = version + 1, " +
+            "updated_at = current_timestamp where id in (:ids)", nativeQuery = true)
+    int releaseAll(@Param("ids") Collection<Integer> ids);
+
+    @Query("select b.id from Book b where b.person.id = :personId")
+    List<Integer> findIdsByPersonId(@Param("personId") int personId);
+
+    @Modifying
+    @QueryHints(@QueryHint(name = HINT_NATIVE_SPACES, value = NATIVE_DML_SPACE))
+    @Query(value = "update book set title = :#{#book.title}, author = :#{#book.author}, year = :#{#book.year}, " +
+            "version = version + 1, updated_at = current_timestamp where id = :id", nativeQuery = true)
+    int updateDetails(@Param("id") int id, @Param("book") Book book);
+
+    @Modifying
+    @QueryHints(@QueryHint(name = HINT_NATIVE_SPACES, value = NATIVE_DML_SPACE))
+    @Query(value = "delete from book where id = :id", nativeQuery = true)
+    int deleteOne(@Param("id") int id);
+
+    @Modifying
+    @QueryHints(@QueryHint(name = HINT_NATIVE_SPACES, value = NATIVE_DML_SPACE))
+    @Query(value = "update book set person_id = null, date_taken = null, version = version + 1, " +
+            "updated_at = current_timestamp where person_id = :personId", nativeQuery = true)
+    int releaseAllByPersonId(@Param("personId") int personId);
+
+    interface BookHolder {
+        int getId();
+
+        Integer getPersonId();
+    }
+
+    interface BookRevision {
+        int getId();
+
+        int getVersion();
+
+        Date getUpdatedAt();
+    }
+
+    interface LoanSummary {
+        long getLoans();
+
+        long getOverdueLoans();
+    }
 }
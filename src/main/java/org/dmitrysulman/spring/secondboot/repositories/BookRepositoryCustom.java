@@ -0,0 +1,9 @@
+package org.dmitrysulman.spring.secondboot.repositories;
+
+import org.dmitrysulman.spring.secondboot.models.Book;
+
+import java.util.function.Consumer;
+
+public interface BookRepositoryCustom {
+    void scrollAllWithPerson(int fetchSize, Consumer<Book> consumer);
+}
@@ -0,0 +1,36 @@
+package org.dmitrysulman.spring.secondboot.repositories;
+
+import org.dmitrysulman.spring.secondboot.models.Book;
+import org.hibernate.CacheMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.function.Consumer;
+
+public class BookRepositoryImpl implements BookRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public void scrollAllWithPerson(int fetchSize, Consumer<Book> consumer) {
+        Session session = entityManager.unwrap(Session.class);
+        try (ScrollableResults results = session
+                .createQuery("select b from Book b left join fetch b.person order by b.id", Book.class)
+                .setFetchSize(fetchSize)
+                .setReadOnly(true)
+                .setCacheMode(CacheMode.IGNORE)
+                .scroll(ScrollMode.FORWARD_ONLY)) {
+            int rows = 0;
+            while (results.next()) {
+                consumer.accept((Book) results.get(0));
+                if (++rows % fetchSize == 0) {
+                    session.clear();
+                }
+            }
+        }
+    }
+}
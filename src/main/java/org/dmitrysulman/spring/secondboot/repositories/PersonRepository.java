@@ -1,12 +1,60 @@
 package org.dmitrysulman.spring.secondboot.repositories;
 
+import org.dmitrysulman.spring.secondboot.dto.PersonSuggestion;
 import org.dmitrysulman.spring.secondboot.models.Person;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+import java.util.Date;
+import java.util.List;
 import java.util.Optional;
 
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+import static org.hibernate.jpa.QueryHints.HINT_NATIVE_SPACES;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
 @Repository
 public interface PersonRepository extends JpaRepository<Person, Integer> {
+    @Override
+    @QueryHints({@QueryHint(name = HINT_CACHEABLE, value = "true"), @QueryHint(name = HINT_READONLY, value = "true")})
+    List<Person> findAll();
+
+    @QueryHints({@QueryHint(name = HINT_CACHEABLE, value = "true"), @QueryHint(name = HINT_READONLY, value = "true")})
     Optional<Person> findByFullName(String fullName);
+
+    @Modifying
+    @QueryHints(@QueryHint(name = HINT_NATIVE_SPACES, value = BookRepository.NATIVE_DML_SPACE))
+    @Query(value = "update person set full_name = :#{#person.fullName}, year_of_birth = :#{#person.yearOfBirth}, " +
+            "version = version + 1, updated_at = current_timestamp where id = :id", nativeQuery = true)
+    int updateDetails(@Param("id") int id, @Param("person") Person person);
+
+    @Modifying
+    @QueryHints(@QueryHint(name = HINT_NATIVE_SPACES, value = BookRepository.NATIVE_DML_SPACE))
+    @Query(value = "delete from person where id = :id", nativeQuery = true)
+    int deleteOne(@Param("id") int id);
+
+    @Query("select p.version as version, p.updatedAt as updatedAt, count(b) as loans, max(b.updatedAt) as loansUpdatedAt " +
+            "from Person p left join p.books b where p.id = :id group by p.id, p.version, p.updatedAt")
+    Optional<PersonRevision> findRevisionById(@Param("id") int id);
+
+    Slice<PersonSuggestion> findAllBy(Pageable pageable);
+
+    Slice<PersonSuggestion> findByFullNameStartingWithIgnoreCase(String prefix, Pageable pageable);
+
+    interface PersonRevision {
+        int getVersion();
+
+        Date getUpdatedAt();
+
+        long getLoans();
+
+        Date getLoansUpdatedAt();
+    }
 }
@@ -0,0 +1,66 @@
+package org.dmitrysulman.spring.secondboot.services;
+
+import org.dmitrysulman.spring.secondboot.events.BookChangedEvent;
+import org.dmitrysulman.spring.secondboot.events.BulkImportEvent;
+import org.dmitrysulman.spring.secondboot.models.Book;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Component
+public class BookCountProvider {
+
+    private static final long UNKNOWN = -1;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AtomicLong count = new AtomicLong(UNKNOWN);
+
+    @Autowired
+    public BookCountProvider(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public long getApproximateCount() {
+        long current = count.get();
+        if (current == UNKNOWN) {
+            count.compareAndSet(UNKNOWN, estimate());
+            current = count.get();
+        }
+        return current;
+    }
+
+    @TransactionalEventListener
+    public void onBookChanged(BookChangedEvent event) {
+        if (event.getType() == BookChangedEvent.Type.CREATED) {
+            count.updateAndGet(current -> current == UNKNOWN ? UNKNOWN : current + 1);
+        } else if (event.getType() == BookChangedEvent.Type.DELETED) {
+            count.updateAndGet(current -> current == UNKNOWN ? UNKNOWN : Math.max(current - 1, 0));
+        }
+    }
+
+    @TransactionalEventListener
+    public void onBulkImport(BulkImportEvent event) {
+        if (event.getEntityType() == Book.class) {
+            count.updateAndGet(current -> current == UNKNOWN ? UNKNOWN : current + event.getImported());
+        }
+    }
+
+    private long estimate() {
+        String database = jdbcTemplate.execute(
+                (ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName());
+        if ("PostgreSQL".equals(database)) {
+            Long estimate = jdbcTemplate.queryForObject(
+                    "select reltuples::bigint from pg_class where oid = 'book'::regclass", Long.class);
+            if (Objects.nonNull(estimate) && estimate >= 0) {
+                return estimate;
+            }
+        }
+        Long exact = jdbcTemplate.queryForObject("select count(*) from book", Long.class);
+        return Objects.isNull(exact) ? 0 : exact;
+    }
+}
@@ -0,0 +1,226 @@
+package org.dmitrysulman.spring.secondboot.services;
+
+import org.dmitrysulman.spring.secondboot.events.BookChangedEvent;
+import org.dmitrysulman.spring.secondboot.events.BulkImportEvent;
+import org.dmitrysulman.spring.secondboot.models.Book;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+@Component
+public class BookSearchIndex {
+
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final int TITLE_WEIGHT = 2;
+    private static final int AUTHOR_WEIGHT = 1;
+    private static final int MAX_PREFIX_EXPANSIONS = 64;
+    private static final double SATURATION = 1.2;
+    private static final Comparator<ScoredBook> BY_RANK = Comparator.comparingDouble(ScoredBook::getScore).reversed()
+            .thenComparingInt(ScoredBook::getId);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ConcurrentSkipListMap<String, Map<Integer, Integer>> postings = new ConcurrentSkipListMap<>();
+    private final Map<Integer, Set<String>> termsByBook = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+
+    @Autowired
+    public BookSearchIndex(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public Hits search(String query, long offset, int limit) {
+        if (offset < 0 || limit < 1) {
+            throw new IllegalArgumentException("Bad search window");
+        }
+        ensureLoaded();
+        List<String> tokens = tokenize(query);
+        if (tokens.isEmpty()) {
+            return new Hits(Collections.emptyList(), 0);
+        }
+        List<Map<Integer, Integer>> clauses = new ArrayList<>(tokens.size());
+        for (int i = 0; i < tokens.size(); i++) {
+            Map<Integer, Integer> clause = i == tokens.size() - 1
+                    ? expand(tokens.get(i))
+                    : postings.getOrDefault(tokens.get(i), Collections.emptyMap());
+            if (clause.isEmpty()) {
+                return new Hits(Collections.emptyList(), 0);
+            }
+            clauses.add(clause);
+        }
+        clauses.sort(Comparator.comparingInt(Map::size));
+
+        int documents = termsByBook.size();
+        double[] idf = new double[clauses.size()];
+        for (int i = 0; i < clauses.size(); i++) {
+            int frequency = clauses.get(i).size();
+            idf[i] = Math.log(1 + (documents - frequency + 0.5) / (frequency + 0.5));
+        }
+
+        long wanted = offset + limit;
+        PriorityQueue<ScoredBook> top = new PriorityQueue<>(BY_RANK.reversed());
+        int total = 0;
+        candidates:
+        for (Map.Entry<Integer, Integer> posting : clauses.get(0).entrySet()) {
+            double score = idf[0] * saturate(posting.getValue());
+            for (int i = 1; i < clauses.size(); i++) {
+                Integer frequency = clauses.get(i).get(posting.getKey());
+                if (Objects.isNull(frequency)) {
+                    continue candidates;
+                }
+                score += idf[i] * saturate(frequency);
+            }
+            total++;
+            top.offer(new ScoredBook(posting.getKey(), score));
+            if (top.size() > wanted) {
+                top.poll();
+            }
+        }
+
+        List<ScoredBook> ranked = new ArrayList<>(top);
+        ranked.sort(BY_RANK);
+        List<Integer> ids = ranked.subList((int) Math.min(offset, ranked.size()), ranked.size()).stream()
+                .map(ScoredBook::getId)
+                .collect(Collectors.toList());
+        return new Hits(ids, total);
+    }
+
+    @TransactionalEventListener
+    public synchronized void onBulkImport(BulkImportEvent event) {
+        if (!loaded) {
+            return;
+        }
+        event.getEntities(Book.class).forEach(book -> put(book.getId(), book.getTitle(), book.getAuthor()));
+    }
+
+    @TransactionalEventListener
+    public synchronized void onBookChanged(BookChangedEvent event) {
+        if (!loaded) {
+            return;
+        }
+        if (event.getType() == BookChangedEvent.Type.DELETED) {
+            remove(event.getBookId());
+        } else if (Objects.nonNull(event.getTitle())) {
+            put(event.getBookId(), event.getTitle(), event.getAuthor());
+        }
+    }
+
+    private void ensureLoaded() {
+        if (!loaded) {
+            synchronized (this) {
+                if (!loaded) {
+                    jdbcTemplate.query("select id, title, author from book",
+                            (RowCallbackHandler) rs -> put(rs.getInt("id"), rs.getString("title"), rs.getString("author")));
+                    loaded = true;
+                }
+            }
+        }
+    }
+
+    private Map<Integer, Integer> expand(String prefix) {
+        Map<Integer, Integer> merged = new HashMap<>();
+        int expansions = 0;
+        for (Map<Integer, Integer> termPostings : postings.subMap(prefix, true, prefix + Character.MAX_VALUE, true).values()) {
+            termPostings.forEach((id, frequency) -> merged.merge(id, frequency, Math::max));
+            if (++expansions == MAX_PREFIX_EXPANSIONS) {
+                break;
+            }
+        }
+        return merged;
+    }
+
+    private void put(int id, String title, String author) {
+        remove(id);
+        Map<String, Integer> frequencies = new HashMap<>();
+        tokenize(title).forEach(term -> frequencies.merge(term, TITLE_WEIGHT, Integer::sum));
+        tokenize(author).forEach(term -> frequencies.merge(term, AUTHOR_WEIGHT, Integer::sum));
+        frequencies.forEach((term, frequency) ->
+                postings.computeIfAbsent(term, key -> new ConcurrentHashMap<>()).put(id, frequency));
+        termsByBook.put(id, frequencies.keySet());
+    }
+
+    private void remove(int id) {
+        Set<String> terms = termsByBook.remove(id);
+        if (Objects.isNull(terms)) {
+            return;
+        }
+        for (String term : terms) {
+            Map<Integer, Integer> termPostings = postings.get(term);
+            if (Objects.nonNull(termPostings)) {
+                termPostings.remove(id);
+                if (termPostings.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+    }
+
+    private static double saturate(int frequency) {
+        return frequency * (SATURATION + 1) / (frequency + SATURATION);
+    }
+
+    private static List<String> tokenize(String text) {
+        if (Objects.isNull(text)) {
+            return Collections.emptyList();
+        }
+        List<String> tokens = new ArrayList<>();
+        for (String token : TOKEN_SEPARATOR.split(text.toLowerCase(Locale.ROOT))) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    private static class ScoredBook {
+        private final int id;
+        private final double score;
+
+        private ScoredBook(int id, double score) {
+            this.id = id;
+            this.score = score;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public double getScore() {
+            return score;
+        }
+    }
+
+    public static class Hits {
+        private final List<Integer> ids;
+        private final int total;
+
+        public Hits(List<Integer> ids, int total) {
+            this.ids = ids;
+            this.total = total;
+        }
+
+        public List<Integer> getIds() {
+            return ids;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+    }
+}
@@ -1,115 +1,344 @@
 package org.dmitrysulman.spring.secondboot.services;
 
+import io.micrometer.core.annotation.Timed;
+import org.dmitrysulman.spring.secondboot.dto.BookChanges;
+import org.dmitrysulman.spring.secondboot.dto.BookListing;
+import org.dmitrysulman.spring.secondboot.dto.BookSuggestion;
+import org.dmitrysulman.spring.secondboot.dto.BookSummary;
+import org.dmitrysulman.spring.secondboot.dto.BookView;
+import org.dmitrysulman.spring.secondboot.dto.BulkLoanResult;
+import org.dmitrysulman.spring.secondboot.dto.OverdueLoan;
+import org.dmitrysulman.spring.secondboot.events.BookChangedEvent;
 import org.dmitrysulman.spring.secondboot.models.Book;
-import org.dmitrysulman.spring.secondboot.models.Person;
+import org.dmitrysulman.spring.secondboot.models.BookTombstone;
 import org.dmitrysulman.spring.secondboot.repositories.BookRepository;
 import org.dmitrysulman.spring.secondboot.repositories.PersonRepository;
+import org.dmitrysulman.spring.secondboot.util.BookCursor;
+import org.dmitrysulman.spring.secondboot.util.ChangeCursor;
+import org.dmitrysulman.spring.secondboot.util.KeysetPage;
+import org.dmitrysulman.spring.secondboot.util.LoanPolicy;
+import org.dmitrysulman.spring.secondboot.util.ResourceVersion;
+import org.hibernate.Hibernate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
+@Timed(value = "library.service", histogram = true)
 @Transactional(readOnly = true)
 public class BookService {
 
+    private static final int DEFAULT_BOOKS_PER_PAGE = 10;
+    private static final int EXPORT_FETCH_SIZE = 1000;
+    private static final String BOOK_NOT_FOUND = "Book not found";
+    private static final String BOOK_ALREADY_TAKEN = "Book is already taken";
+    private static final String BOOK_NOT_HELD = "Book is not held by this person";
+
+    public enum CheckoutResult {
+        ASSIGNED, ALREADY_TAKEN, BOOK_NOT_FOUND, PERSON_NOT_FOUND
+    }
+
     private final BookRepository bookRepository;
     private final PersonRepository personRepository;
+    private final BookCountProvider bookCountProvider;
+    private final BookTitleIndex bookTitleIndex;
+    private final BookSearchIndex bookSearchIndex;
+    private final SecondLevelCacheEvictor cacheEvictor;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Autowired
-    public BookService(BookRepository bookRepository, PersonRepository personRepository) {
+    public BookService(BookRepository bookRepository, PersonRepository personRepository,
+                       BookCountProvider bookCountProvider, BookTitleIndex bookTitleIndex,
+                       BookSearchIndex bookSearchIndex, SecondLevelCacheEvictor cacheEvictor,
+                       ApplicationEventPublisher eventPublisher) {
         this.bookRepository = bookRepository;
         this.personRepository = personRepository;
+        this.bookCountProvider = bookCountProvider;
+        this.bookTitleIndex = bookTitleIndex;
+        this.bookSearchIndex = bookSearchIndex;
+        this.cacheEvictor = cacheEvictor;
+        this.eventPublisher = eventPublisher;
     }
 
-    public Page<Book> findAll(Integer page, Integer booksPerPage, Boolean sortByYear) {
-        Sort sort = Sort.unsorted();
+    public Slice<BookSummary> findAll(Integer page, Integer booksPerPage, Boolean sortByYear) {
+        Sort sort = Sort.by("id");
         if (Objects.nonNull(sortByYear) && sortByYear) {
-            sort = Sort.by("year");
-        }
-        if (Objects.isNull(page) && Objects.isNull(booksPerPage) && Objects.isNull(sortByYear)) {
-            return bookRepository.findAll(Pageable.unpaged());
+            sort = Sort.by("year", "id");
         }
         if (Objects.isNull(page)) {
             page = 0;
         }
         if (Objects.isNull(booksPerPage)) {
-            booksPerPage = 10;
+            booksPerPage = DEFAULT_BOOKS_PER_PAGE;
+        }
+        return bookRepository.findAllBy(PageRequest.of(page, booksPerPage, sort));
+    }
+
+    public int estimateTotalPages(Slice<?> slice) {
+        int pages = (int) Math.ceil((double) bookCountProvider.getApproximateCount() / slice.getSize());
+        return Math.max(pages, slice.getNumber() + (slice.hasNext() ? 2 : 1));
+    }
+
+    public KeysetPage<BookSummary> findAll(BookCursor cursor, Integer booksPerPage) {
+        if (Objects.isNull(booksPerPage)) {
+            booksPerPage = DEFAULT_BOOKS_PER_PAGE;
         }
-        return bookRepository.findAll(PageRequest.of(page, booksPerPage, sort));
+        Pageable limit = PageRequest.of(0, booksPerPage + 1);
+        List<BookSummary> books;
+        if (cursor.isSortByYear()) {
+            books = cursor.isBackward()
+                    ? bookRepository.findBeforeYearAndId(cursor.getYear(), cursor.getId(), limit)
+                    : bookRepository.findAfterYearAndId(cursor.getYear(), cursor.getId(), limit);
+        } else {
+            books = cursor.isBackward()
+                    ? bookRepository.findBeforeId(cursor.getId(), limit)
+                    : bookRepository.findAfterId(cursor.getId(), limit);
+        }
+
+        boolean hasMore = books.size() > booksPerPage;
+        books = new ArrayList<>(hasMore ? books.subList(0, booksPerPage) : books);
+        if (cursor.isBackward()) {
+            Collections.reverse(books);
+        }
+        if (books.isEmpty()) {
+            return new KeysetPage<>(books, booksPerPage, null, null);
+        }
+
+        boolean hasPrevious = cursor.isBackward() ? hasMore : !cursor.isFirst();
+        boolean hasNext = cursor.isBackward() || hasMore;
+        BookSummary first = books.get(0);
+        BookSummary last = books.get(books.size() - 1);
+        return new KeysetPage<>(books, booksPerPage,
+                hasPrevious ? BookCursor.before(first, cursor.isSortByYear()).encode() : null,
+                hasNext ? BookCursor.after(last, cursor.isSortByYear()).encode() : null);
     }
 
     public Optional<Book> findOne(int id) {
-        return bookRepository.findById(id);
+        Optional<Book> book = bookRepository.findById(id);
+        book.ifPresent(value -> Hibernate.initialize(value.getPerson()));
+        return book;
+    }
+
+    public Optional<ResourceVersion> findVersion(int id) {
+        return bookRepository.findRevisionById(id)
+                .map(revision -> new ResourceVersion(String.valueOf(revision.getVersion()), revision.getUpdatedAt()));
+    }
+
+    public Optional<BookView> findView(int id) {
+        return bookRepository.findViewById(id);
+    }
+
+    public ResourceVersion findPageVersion(int afterId, int limit) {
+        List<BookRepository.BookRevision> revisions = bookRepository.findRevisionsAfterId(afterId, PageRequest.of(0, limit));
+        Date lastModified = revisions.stream().map(BookRepository.BookRevision::getUpdatedAt)
+                .max(Date::compareTo).orElse(null);
+        return ResourceVersion.digest(revisions.stream()
+                .map(revision -> revision.getId() + ":" + revision.getVersion())
+                .collect(Collectors.toList()), lastModified);
+    }
+
+    public List<BookView> findViews(int afterId, int limit) {
+        return bookRepository.findViewsAfterId(afterId, PageRequest.of(0, limit));
+    }
+
+    // Both queries must see the same snapshot, and so the same horizon, or the merge could skip a change
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    public BookChanges findChangesSince(ChangeCursor cursor, int limit) {
+        List<BookView> changed = bookRepository.findChangedSince(cursor.getChangeXid(), cursor.getId(), PageRequest.of(0, limit));
+        List<BookTombstone> deleted = bookRepository.findDeletedSince(cursor.getChangeXid(), cursor.getId(), PageRequest.of(0, limit));
+        ChangeCursor last = cursor;
+        int changes = 0;
+        int deletes = 0;
+        while (changes + deletes < limit && (changes < changed.size() || deletes < deleted.size())) {
+            if (deletes == deleted.size() || changes < changed.size() && isBefore(changed.get(changes), deleted.get(deletes))) {
+                BookView change = changed.get(changes++);
+                last = ChangeCursor.after(change.getChangeXid(), change.getId());
+            } else {
+                BookTombstone tombstone = deleted.get(deletes++);
+                last = ChangeCursor.after(tombstone.getChangeXid(), tombstone.getBookId());
+            }
+        }
+        return new BookChanges(changed.subList(0, changes),
+                deleted.subList(0, deletes).stream().map(BookTombstone::getBookId).collect(Collectors.toList()),
+                last.encode());
     }
 
     @Transactional
     public int save(Book book) {
         book = bookRepository.save(book);
+        eventPublisher.publishEvent(BookChangedEvent.created(book));
         return book.getId();
     }
 
     @Transactional
     public Boolean update(int id, Book book) {
-        if (!bookRepository.existsById(id)) {
+        cacheEvictor.lockBook(id);
+        if (bookRepository.updateDetails(id, book) == 0) {
             return false;
-        } else {
-            book.setId(id);
-            bookRepository.save(book);
         }
+        book.setId(id);
+        eventPublisher.publishEvent(BookChangedEvent.updated(book));
         return true;
     }
 
     @Transactional
     public Boolean delete(int id) {
-        if (!bookRepository.existsById(id)) {
+        cacheEvictor.lockBook(id);
+        if (bookRepository.deleteOne(id) == 0) {
             return false;
-        } else {
-            bookRepository.deleteById(id);
         }
+        eventPublisher.publishEvent(BookChangedEvent.deleted(id));
         return true;
     }
 
     @Transactional
-    public Boolean assign(int bookId, int personId) {
-        Optional<Book> book = bookRepository.findById(bookId);
-        if (book.isEmpty()) {
-            return false;
-        } else {
-            Optional<Person> personToAssign = personRepository.findById(personId);
-            if (personToAssign.isEmpty()) {
-                return false;
-            } else {
-                book.get().setPerson(personToAssign.get());
-                book.get().setDateTaken(new Date());
-                bookRepository.save(book.get());
-            }
+    public CheckoutResult assign(int bookId, int personId) {
+        if (!personRepository.existsById(personId)) {
+            return CheckoutResult.PERSON_NOT_FOUND;
         }
-        return true;
+        cacheEvictor.lockBook(bookId);
+        cacheEvictor.lockBooksOf(personId);
+        if (bookRepository.assignIfFree(bookId, personId, new Date()) == 0) {
+            return bookRepository.existsById(bookId) ? CheckoutResult.ALREADY_TAKEN : CheckoutResult.BOOK_NOT_FOUND;
+        }
+        eventPublisher.publishEvent(BookChangedEvent.assigned(bookId, personId));
+        return CheckoutResult.ASSIGNED;
     }
 
     @Transactional
     public Boolean release(int id) {
-        Optional<Book> book = bookRepository.findById(id);
-        if (book.isEmpty()) {
+        // Locked and updated in place like releaseAll; a versioned entity save would fail against a concurrent checkout
+        Map<Integer, Integer> holders = lockHolders(List.of(id));
+        if (!holders.containsKey(id)) {
             return false;
-        } else {
-            book.get().setPerson(null);
-            book.get().setDateTaken(null);
-            bookRepository.save(book.get());
+        }
+        Integer previousPersonId = holders.get(id);
+        if (Objects.nonNull(previousPersonId)) {
+            cacheEvictor.lockBook(id);
+            cacheEvictor.lockBooksOf(previousPersonId);
+            bookRepository.releaseAll(List.of(id));
+            eventPublisher.publishEvent(BookChangedEvent.released(id, previousPersonId));
         }
         return true;
     }
 
-    public List<Book> findByTitleStartingWith(String title) {
-        return bookRepository.findByTitleStartingWithIgnoreCase(title);
+    @Transactional
+    public Optional<BulkLoanResult> assignAll(int personId, List<Integer> bookIds) {
+        if (!personRepository.existsById(personId)) {
+            return Optional.empty();
+        }
+        Map<Integer, Integer> holders = lockHolders(bookIds);
+        List<Integer> succeeded = new ArrayList<>();
+        List<BulkLoanResult.Rejection> rejected = new ArrayList<>();
+        for (Integer bookId : new LinkedHashSet<>(bookIds)) {
+            if (!holders.containsKey(bookId)) {
+                rejected.add(new BulkLoanResult.Rejection(bookId, BOOK_NOT_FOUND));
+            } else if (Objects.nonNull(holders.get(bookId))) {
+                rejected.add(new BulkLoanResult.Rejection(bookId, BOOK_ALREADY_TAKEN));
+            } else {
+                succeeded.add(bookId);
+            }
+        }
+        if (!succeeded.isEmpty()) {
+            cacheEvictor.lockBooks(succeeded);
+            cacheEvictor.lockBooksOf(personId);
+            bookRepository.assignAll(succeeded, personId, new Date());
+            succeeded.forEach(bookId -> eventPublisher.publishEvent(BookChangedEvent.assigned(bookId, personId)));
+        }
+        return Optional.of(new BulkLoanResult(succeeded, rejected));
+    }
+
+    @Transactional
+    public BulkLoanResult releaseAll(int personId, List<Integer> bookIds) {
+        Map<Integer, Integer> holders = lockHolders(bookIds);
+        List<Integer> succeeded = new ArrayList<>();
+        List<BulkLoanResult.Rejection> rejected = new ArrayList<>();
+        for (Integer bookId : new LinkedHashSet<>(bookIds)) {
+            if (!holders.containsKey(bookId)) {
+                rejected.add(new BulkLoanResult.Rejection(bookId, BOOK_NOT_FOUND));
+            } else if (!Objects.equals(holders.get(bookId), personId)) {
+                rejected.add(new BulkLoanResult.Rejection(bookId, BOOK_NOT_HELD));
+            } else {
+                succeeded.add(bookId);
+            }
+        }
+        if (!succeeded.isEmpty()) {
+            cacheEvictor.lockBooks(succeeded);
+            cacheEvictor.lockBooksOf(personId);
+            bookRepository.releaseAll(succeeded);
+            succeeded.forEach(bookId -> eventPublisher.publishEvent(BookChangedEvent.released(bookId, personId)));
+        }
+        return new BulkLoanResult(succeeded, rejected);
+    }
+
+    public List<BookListing> findByTitleStartingWith(String title, int limit) {
+        return findAllInOrder(bookTitleIndex.findIdsByPrefix(title, limit));
+    }
+
+    public Page<BookListing> search(String text, Integer page, Integer booksPerPage) {
+        if (Objects.isNull(page)) {
+            page = 0;
+        }
+        if (Objects.isNull(booksPerPage)) {
+            booksPerPage = DEFAULT_BOOKS_PER_PAGE;
+        }
+        BookSearchIndex.Hits hits = bookSearchIndex.search(text, (long) page * booksPerPage, booksPerPage);
+        return new PageImpl<>(findAllInOrder(hits.getIds()), PageRequest.of(page, booksPerPage), hits.getTotal());
+    }
+
+    public List<BookSuggestion> suggestByTitle(String prefix, int limit) {
+        return bookTitleIndex.findByPrefix(prefix, limit);
+    }
+
+    public void forEachOverdueLoan(Consumer<OverdueLoan> consumer) {
+        try (Stream<OverdueLoan> loans = bookRepository.streamOverdueLoans(LoanPolicy.overdueBefore())) {
+            loans.forEach(consumer);
+        }
+    }
+
+    public void forEachBook(Consumer<Book> consumer) {
+        bookRepository.scrollAllWithPerson(EXPORT_FETCH_SIZE, consumer);
+    }
+
+    private static boolean isBefore(BookView change, BookTombstone tombstone) {
+        return change.getChangeXid() < tombstone.getChangeXid()
+                || change.getChangeXid() == tombstone.getChangeXid() && change.getId() < tombstone.getBookId();
+    }
+
+    private Map<Integer, Integer> lockHolders(List<Integer> bookIds) {
+        Map<Integer, Integer> holders = new HashMap<>();
+        bookRepository.lockHoldersByIdIn(bookIds).forEach(holder -> holders.put(holder.getId(), holder.getPersonId()));
+        return holders;
+    }
+
+    private List<BookListing> findAllInOrder(List<Integer> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<Integer, BookListing> books = bookRepository.findListingsByIdIn(ids).stream()
+                .collect(Collectors.toMap(BookListing::getId, Function.identity()));
+        return ids.stream().map(books::get).filter(Objects::nonNull).collect(Collectors.toList());
     }
 }
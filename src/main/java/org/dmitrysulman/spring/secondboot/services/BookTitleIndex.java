@@ -0,0 +1,194 @@
+package org.dmitrysulman.spring.secondboot.services;
+
+import org.dmitrysulman.spring.secondboot.dto.BookSuggestion;
+import org.dmitrysulman.spring.secondboot.events.BookChangedEvent;
+import org.dmitrysulman.spring.secondboot.events.BulkImportEvent;
+import org.dmitrysulman.spring.secondboot.models.Book;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+@Component
+public class BookTitleIndex {
+
+    private static final int SNAPSHOT_VERSION = 3;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Path snapshotFile;
+    private final ConcurrentSkipListMap<String, BookSuggestion> titles = new ConcurrentSkipListMap<>();
+    private final Map<Integer, String> keysById = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+
+    @Autowired
+    public BookTitleIndex(JdbcTemplate jdbcTemplate,
+                          @Value("${library.typeahead.snapshot-file:}") String snapshotFile) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.snapshotFile = snapshotFile.isEmpty() ? null : Path.of(snapshotFile);
+    }
+
+    public List<BookSuggestion> findByPrefix(String prefix, int limit) {
+        ensureLoaded();
+        String from = fold(prefix);
+        ConcurrentNavigableMap<String, BookSuggestion> matches = titles.subMap(from, true, from + Character.MAX_VALUE, true);
+        List<BookSuggestion> result = new ArrayList<>(Math.min(limit, 64));
+        for (BookSuggestion suggestion : matches.values()) {
+            if (result.size() == limit) {
+                break;
+            }
+            result.add(suggestion);
+        }
+        return result;
+    }
+
+    public List<Integer> findIdsByPrefix(String prefix, int limit) {
+        ensureLoaded();
+        String from = fold(prefix);
+        List<Integer> ids = new ArrayList<>(Math.min(limit, 64));
+        for (BookSuggestion suggestion : titles.subMap(from, true, from + Character.MAX_VALUE, true).values()) {
+            if (ids.size() == limit) {
+                break;
+            }
+            ids.add(suggestion.getId());
+        }
+        return ids;
+    }
+
+    @TransactionalEventListener
+    public synchronized void onBulkImport(BulkImportEvent event) {
+        if (!loaded) {
+            return;
+        }
+        event.getEntities(Book.class).forEach(book -> put(book.getId(), book.getTitle()));
+    }
+
+    @TransactionalEventListener
+    public synchronized void onBookChanged(BookChangedEvent event) {
+        if (!loaded) {
+            return;
+        }
+        if (event.getType() == BookChangedEvent.Type.DELETED) {
+            remove(event.getBookId());
+        } else if (Objects.nonNull(event.getTitle())) {
+            put(event.getBookId(), event.getTitle());
+        }
+    }
+
+    @PreDestroy
+    public synchronized void writeSnapshot() {
+        if (!loaded || Objects.isNull(snapshotFile)) {
+            return;
+        }
+        long[] state;
+        try {
+            state = databaseState();
+        } catch (DataAccessException e) {
+            return;
+        }
+        try {
+            Files.createDirectories(snapshotFile.toAbsolutePath().getParent());
+            Path temporary = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeLong(state[0]);
+                out.writeLong(state[1]);
+                out.writeLong(state[2]);
+                out.writeInt(titles.size());
+                for (BookSuggestion suggestion : titles.values()) {
+                    out.writeInt(suggestion.getId());
+                    out.writeUTF(suggestion.getTitle());
+                }
+            }
+            Files.move(temporary, snapshotFile, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void ensureLoaded() {
+        if (!loaded) {
+            synchronized (this) {
+                if (!loaded) {
+                    if (!readSnapshot()) {
+                        jdbcTemplate.query("select id, title from book",
+                                (RowCallbackHandler) rs -> put(rs.getInt("id"), rs.getString("title")));
+                    }
+                    loaded = true;
+                }
+            }
+        }
+    }
+
+    private boolean readSnapshot() {
+        if (Objects.isNull(snapshotFile) || !Files.exists(snapshotFile)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile)))) {
+            long[] state = databaseState();
+            if (in.readInt() != SNAPSHOT_VERSION
+                    || in.readLong() != state[0] || in.readLong() != state[1] || in.readLong() != state[2]) {
+                return false;
+            }
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                put(in.readInt(), in.readUTF());
+            }
+            return true;
+        } catch (IOException e) {
+            titles.clear();
+            keysById.clear();
+            return false;
+        } finally {
+            try {
+                Files.deleteIfExists(snapshotFile);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    // Row count and max id catch inserts and deletes; max(change_xid) catches title edits made while we were down
+    private long[] databaseState() {
+        return jdbcTemplate.queryForObject("select count(*), coalesce(max(id), 0), coalesce(max(change_xid), 0) from book",
+                (rs, rowNum) -> new long[]{rs.getLong(1), rs.getLong(2), rs.getLong(3)});
+    }
+
+    private void put(int id, String title) {
+        remove(id);
+        String key = fold(title) + '\u0000' + id;
+        titles.put(key, new BookSuggestion(id, title));
+        keysById.put(id, key);
+    }
+
+    private void remove(int id) {
+        String key = keysById.remove(id);
+        if (Objects.nonNull(key)) {
+            titles.remove(key);
+        }
+    }
+
+    private static String fold(String text) {
+        return text.toLowerCase(Locale.ROOT);
+    }
+}
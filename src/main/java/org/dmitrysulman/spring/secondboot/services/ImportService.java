@@ -0,0 +1,352 @@
+package org.dmitrysulman.spring.secondboot.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.annotation.Timed;
+import org.dmitrysulman.spring.secondboot.dto.ImportProgress;
+import org.dmitrysulman.spring.secondboot.events.BulkImportEvent;
+import org.dmitrysulman.spring.secondboot.models.Book;
+import org.dmitrysulman.spring.secondboot.models.Person;
+import org.dmitrysulman.spring.secondboot.util.CsvReader;
+import org.dmitrysulman.spring.secondboot.util.PersonValidator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+@Timed(value = "library.service", histogram = true)
+public class ImportService {
+
+    public static final String TEXT_CSV = "text/csv";
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+    public enum Format {
+        CSV, NDJSON;
+
+        public static Format fromContentType(String contentType) {
+            return MediaType.parseMediaType(contentType).isCompatibleWith(MediaType.parseMediaType(TEXT_CSV)) ? CSV : NDJSON;
+        }
+    }
+
+    public interface Listener {
+        void onRejected(long record, String message);
+
+        void onProgress(ImportProgress progress);
+    }
+
+    private static final String DUPLICATE_NAME = "fullName: " + PersonValidator.DUPLICATE_NAME;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int batchSize;
+    private final Deque<Integer> spareBookIds = new ArrayDeque<>();
+
+    @Autowired
+    public ImportService(JdbcTemplate jdbcTemplate, NamedParameterJdbcTemplate namedParameterJdbcTemplate,
+                         TransactionTemplate transactionTemplate, Validator validator, ObjectMapper objectMapper,
+                         ApplicationEventPublisher eventPublisher,
+                         @Value("${library.import.batch-size:1000}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = namedParameterJdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.eventPublisher = eventPublisher;
+        this.batchSize = batchSize;
+    }
+
+    public ImportProgress importBooks(InputStream input, Format format, Listener listener) {
+        return importRecords(input, format, listener, this::toBook, this::insertBooks, null);
+    }
+
+    public ImportProgress importPeople(InputStream input, Format format, Listener listener) {
+        return importRecords(input, format, listener, this::toPerson, this::insertPeople, this::insertPeopleOneByOne);
+    }
+
+    private <T> ImportProgress importRecords(InputStream input, Format format, Listener listener,
+                                             Function<Map<String, String>, T> mapper, BatchWriter<T> writer,
+                                             BatchWriter<T> conflictWriter) {
+        RecordSource source = format == Format.CSV ? new CsvSource(input) : new NdjsonSource(input);
+        long processed = 0;
+        long imported = 0;
+        long rejected = 0;
+        List<T> batch = new ArrayList<>(batchSize);
+        List<Long> batchRecords = new ArrayList<>(batchSize);
+        while (true) {
+            Map<String, String> record;
+            try {
+                record = source.next();
+            } catch (IllegalArgumentException e) {
+                processed++;
+                rejected++;
+                listener.onRejected(processed, e.getMessage());
+                continue;
+            }
+            if (Objects.isNull(record)) {
+                break;
+            }
+            processed++;
+            try {
+                T entity = mapper.apply(record);
+                Set<ConstraintViolation<T>> violations = validator.validate(entity);
+                if (violations.isEmpty()) {
+                    batch.add(entity);
+                    batchRecords.add(processed);
+                } else {
+                    rejected++;
+                    listener.onRejected(processed, violations.stream()
+                            .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                            .sorted()
+                            .collect(Collectors.joining("; ")));
+                }
+            } catch (IllegalArgumentException e) {
+                rejected++;
+                listener.onRejected(processed, e.getMessage());
+            }
+            if (batch.size() == batchSize) {
+                int written = flush(batch, batchRecords, writer, conflictWriter, listener);
+                imported += written;
+                rejected += batch.size() - written;
+                batch.clear();
+                batchRecords.clear();
+                listener.onProgress(new ImportProgress(processed, imported, rejected));
+            }
+        }
+        if (!batch.isEmpty()) {
+            int written = flush(batch, batchRecords, writer, conflictWriter, listener);
+            imported += written;
+            rejected += batch.size() - written;
+        }
+        ImportProgress result = new ImportProgress(processed, imported, rejected);
+        listener.onProgress(result);
+        return result;
+    }
+
+    private <T> int flush(List<T> batch, List<Long> records, BatchWriter<T> writer, BatchWriter<T> conflictWriter,
+                          Listener listener) {
+        Integer written;
+        try {
+            written = transactionTemplate.execute(status -> writer.write(batch, records, listener));
+        } catch (DuplicateKeyException e) {
+            if (Objects.isNull(conflictWriter)) {
+                throw e;
+            }
+            // Someone else inserted a key between the lookup and the batch insert, so settle this batch row by row
+            written = transactionTemplate.execute(status -> conflictWriter.write(batch, records, listener));
+        }
+        return Objects.isNull(written) ? 0 : written;
+    }
+
+    private int insertBooks(List<Book> books, List<Long> records, Listener listener) {
+        // The in-memory indexes add imported books by id, so the ids are drawn up front and inserted explicitly.
+        // Asking the driver for generated keys instead makes pgjdbc append RETURNING, which turns off
+        // reWriteBatchedInserts.
+        List<Integer> ids = nextBookIds(books.size());
+        for (int i = 0; i < books.size(); i++) {
+            books.get(i).setId(ids.get(i));
+        }
+        jdbcTemplate.batchUpdate("insert into book (id, title, author, year) values (?, ?, ?, ?)", books, books.size(),
+                (statement, book) -> {
+                    statement.setInt(1, book.getId());
+                    statement.setString(2, book.getTitle());
+                    statement.setString(3, book.getAuthor());
+                    statement.setInt(4, book.getYear());
+                });
+        eventPublisher.publishEvent(new BulkImportEvent(Book.class, books));
+        return books.size();
+    }
+
+    // Draws at least a batch worth of ids per round trip and keeps the rest for the next batches and imports
+    private synchronized List<Integer> nextBookIds(int count) {
+        if (spareBookIds.size() < count) {
+            spareBookIds.addAll(jdbcTemplate.queryForList(
+                    "select nextval(pg_get_serial_sequence('book', 'id')) from generate_series(1, ?)", Integer.class,
+                    Math.max(count - spareBookIds.size(), batchSize)));
+        }
+        List<Integer> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(spareBookIds.poll());
+        }
+        return ids;
+    }
+
+    private int insertPeople(List<Person> people, List<Long> records, Listener listener) {
+        List<Long> duplicates = new ArrayList<>();
+        List<Person> accepted = withoutTakenNames(people, records, duplicates, new ArrayList<>());
+        jdbcTemplate.batchUpdate("insert into person (full_name, year_of_birth) values (?, ?)", accepted, accepted.size(),
+                (statement, person) -> {
+                    statement.setString(1, person.getFullName());
+                    statement.setInt(2, person.getYearOfBirth());
+                });
+        eventPublisher.publishEvent(new BulkImportEvent(Person.class, accepted));
+        duplicates.forEach(record -> listener.onRejected(record, DUPLICATE_NAME));
+        return accepted.size();
+    }
+
+    private int insertPeopleOneByOne(List<Person> people, List<Long> records, Listener listener) {
+        List<Long> duplicates = new ArrayList<>();
+        List<Long> acceptedRecords = new ArrayList<>();
+        List<Person> accepted = withoutTakenNames(people, records, duplicates, acceptedRecords);
+        List<Person> inserted = new ArrayList<>(accepted.size());
+        for (int i = 0; i < accepted.size(); i++) {
+            Person person = accepted.get(i);
+            if (jdbcTemplate.update("insert into person (full_name, year_of_birth) values (?, ?) on conflict do nothing",
+                    person.getFullName(), person.getYearOfBirth()) == 1) {
+                inserted.add(person);
+            } else {
+                duplicates.add(acceptedRecords.get(i));
+            }
+        }
+        eventPublisher.publishEvent(new BulkImportEvent(Person.class, inserted));
+        duplicates.sort(Long::compare);
+        duplicates.forEach(record -> listener.onRejected(record, DUPLICATE_NAME));
+        return inserted.size();
+    }
+
+    private List<Person> withoutTakenNames(List<Person> people, List<Long> records, List<Long> duplicates,
+                                           List<Long> acceptedRecords) {
+        Set<String> taken = new HashSet<>(namedParameterJdbcTemplate.queryForList(
+                "select full_name from person where full_name in (:names)",
+                Map.of("names", people.stream().map(Person::getFullName).collect(Collectors.toSet())),
+                String.class));
+        List<Person> accepted = new ArrayList<>(people.size());
+        for (int i = 0; i < people.size(); i++) {
+            if (taken.add(people.get(i).getFullName())) {
+                accepted.add(people.get(i));
+                acceptedRecords.add(records.get(i));
+            } else {
+                duplicates.add(records.get(i));
+            }
+        }
+        return accepted;
+    }
+
+    private Book toBook(Map<String, String> record) {
+        Book book = new Book();
+        book.setTitle(record.get("title"));
+        book.setAuthor(record.get("author"));
+        book.setYear(parseInt(record.get("year"), "year"));
+        return book;
+    }
+
+    private Person toPerson(Map<String, String> record) {
+        Person person = new Person();
+        person.setFullName(record.get("full_name"));
+        person.setYearOfBirth(parseInt(record.get("year_of_birth"), "yearOfBirth"));
+        return person;
+    }
+
+    private static int parseInt(String value, String field) {
+        try {
+            return Integer.parseInt(Objects.requireNonNull(value).trim());
+        } catch (NumberFormatException | NullPointerException e) {
+            throw new IllegalArgumentException(field + ": should be a number");
+        }
+    }
+
+    private interface BatchWriter<T> {
+        int write(List<T> batch, List<Long> records, Listener listener);
+    }
+
+    private interface RecordSource {
+        Map<String, String> next();
+    }
+
+    private static BufferedReader reader(InputStream input) {
+        return new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+    }
+
+    private static class CsvSource implements RecordSource {
+        private final CsvReader csvReader;
+        private List<String> header;
+
+        CsvSource(InputStream input) {
+            this.csvReader = new CsvReader(reader(input));
+        }
+
+        @Override
+        public Map<String, String> next() {
+            if (Objects.isNull(header)) {
+                header = csvReader.readRow();
+                if (Objects.isNull(header)) {
+                    return null;
+                }
+                header.replaceAll(String::trim);
+            }
+            List<String> row = csvReader.readRow();
+            while (Objects.nonNull(row) && row.size() == 1 && row.get(0).isBlank()) {
+                row = csvReader.readRow();
+            }
+            if (Objects.isNull(row)) {
+                return null;
+            }
+            if (row.size() != header.size()) {
+                throw new IllegalArgumentException("Expected " + header.size() + " columns but found " + row.size());
+            }
+            Map<String, String> record = new HashMap<>();
+            for (int i = 0; i < header.size(); i++) {
+                record.put(header.get(i), row.get(i));
+            }
+            return record;
+        }
+    }
+
+    private class NdjsonSource implements RecordSource {
+        private final BufferedReader reader;
+
+        NdjsonSource(InputStream input) {
+            this.reader = reader(input);
+        }
+
+        @Override
+        public Map<String, String> next() {
+            try {
+                String line = reader.readLine();
+                while (Objects.nonNull(line) && line.isBlank()) {
+                    line = reader.readLine();
+                }
+                if (Objects.isNull(line)) {
+                    return null;
+                }
+                Map<?, ?> values = objectMapper.readValue(line, Map.class);
+                Map<String, String> record = new HashMap<>();
+                values.forEach((key, value) -> record.put(key.toString(), Objects.isNull(value) ? null : value.toString()));
+                return record;
+            } catch (JsonProcessingException e) {
+                throw new IllegalArgumentException("Malformed JSON: " + e.getOriginalMessage());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,432 @@
+package org.dmitrysulman.spring.secondboot.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.dmitrysulman.spring.secondboot.dto.LoanEvent;
+import org.dmitrysulman.spring.secondboot.events.BookChangedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@Component
+public class LoanEventLog {
+
+    private static final Logger log = LoggerFactory.getLogger(LoanEventLog.class);
+    private static final String INSERT = "insert into loan_event (book_id, person_id, type, occurred_at) values (?, ?, ?, ?)";
+    private static final long NOT_JOURNALED = -1;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final BlockingQueue<Journaled> queue;
+    private final int segmentCapacity;
+    private final int batchSize;
+    private final long offerTimeoutMillis;
+    private final long flushIntervalMillis;
+    private final Path spillFile;
+    private final Path replayFile;
+    private final String journalPrefix;
+    private final Object journalLock = new Object();
+    private final Map<Long, Integer> unsettled = new HashMap<>();
+    private final Counter written;
+    private final Counter spilled;
+    private volatile boolean running;
+    private Thread writer;
+    private FileChannel ownership;
+    private FileChannel journal;
+    private long segment;
+    private int segmentEvents;
+
+    @Autowired
+    public LoanEventLog(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, MeterRegistry meterRegistry,
+                        @Value("${library.loan-history.queue-capacity:10000}") int queueCapacity,
+                        @Value("${library.loan-history.batch-size:500}") int batchSize,
+                        @Value("${library.loan-history.offer-timeout-ms:50}") long offerTimeoutMillis,
+                        @Value("${library.loan-history.flush-interval-ms:200}") long flushIntervalMillis,
+                        @Value("${library.loan-history.spill-file}") String spillFile) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.segmentCapacity = queueCapacity;
+        this.batchSize = batchSize;
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.spillFile = Path.of(spillFile);
+        this.replayFile = this.spillFile.resolveSibling(this.spillFile.getFileName() + ".replay");
+        this.journalPrefix = this.spillFile.getFileName() + ".wal.";
+        this.written = Counter.builder("library.loan-history.written")
+                .description("Loan events inserted into the history table")
+                .register(meterRegistry);
+        this.spilled = Counter.builder("library.loan-history.spilled")
+                .description("Loan events written to the spill file because the queue was full or the insert failed")
+                .register(meterRegistry);
+        Gauge.builder("library.loan-history.queue-size", queue, BlockingQueue::size)
+                .description("Loan events waiting for the background writer")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        claimSpillFile();
+        recoverJournal();
+        running = true;
+        writer = new Thread(this::drain, "loan-event-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        writer.join(flushIntervalMillis * 10);
+        flush();
+        synchronized (journalLock) {
+            closeJournal();
+        }
+        try {
+            ownership.close();
+        } catch (IOException e) {
+            log.warn("Could not release the loan event spill file", e);
+        }
+    }
+
+    @TransactionalEventListener
+    public void onBookChanged(BookChangedEvent event) {
+        switch (event.getType()) {
+            case ASSIGNED:
+                record(new LoanEvent(0, event.getBookId(), event.getPersonId(), LoanEvent.Type.ASSIGNED, new Date()));
+                break;
+            case RELEASED:
+                record(new LoanEvent(0, event.getBookId(), event.getPersonId(), LoanEvent.Type.RELEASED, new Date()));
+                break;
+            default:
+        }
+    }
+
+    public void record(LoanEvent event) {
+        Journaled entry = new Journaled(event, journal(event));
+        try {
+            if (queue.offer(entry, offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (spill(List.of(event))) {
+            settle(List.of(entry));
+        }
+    }
+
+    public void flush() {
+        List<Journaled> batch = new ArrayList<>(batchSize);
+        while (queue.drainTo(batch, batchSize) > 0) {
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    public synchronized void replaySpill() {
+        try {
+            if (!Files.exists(replayFile)) {
+                if (!Files.exists(spillFile)) {
+                    return;
+                }
+                Files.move(spillFile, replayFile, StandardCopyOption.ATOMIC_MOVE);
+            }
+            List<LoanEvent> events = Files.readAllLines(replayFile, StandardCharsets.UTF_8).stream()
+                    .filter(line -> !line.isBlank())
+                    .map(LoanEventLog::parse)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+            transactionTemplate.executeWithoutResult(status -> {
+                for (int from = 0; from < events.size(); from += batchSize) {
+                    insert(events.subList(from, Math.min(from + batchSize, events.size())));
+                }
+            });
+            Files.delete(replayFile);
+            written.increment(events.size());
+            log.info("Replayed {} spilled loan events", events.size());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not replay spilled loan events, will retry", e);
+        }
+    }
+
+    // Segments left behind by a crash hold events that may not have reached the table. They go through the spill
+    // replay, so an event inserted just before the crash but not yet settled is recorded twice rather than lost.
+    public void recoverJournal() {
+        synchronized (journalLock) {
+            Path directory = spillFile.toAbsolutePath().getParent();
+            if (!Files.isDirectory(directory)) {
+                return;
+            }
+            List<Path> segments;
+            try (Stream<Path> files = Files.list(directory)) {
+                segments = files.filter(file -> file.getFileName().toString().startsWith(journalPrefix))
+                        .sorted()
+                        .collect(Collectors.toList());
+            } catch (IOException e) {
+                log.warn("Could not list loan event journal segments", e);
+                return;
+            }
+            for (Path file : segments) {
+                long number;
+                try {
+                    number = Long.parseLong(file.getFileName().toString().substring(journalPrefix.length()));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                if (unsettled.containsKey(number)) {
+                    continue;
+                }
+                if (Objects.isNull(journal)) {
+                    segment = Math.max(segment, number + 1);
+                }
+                try {
+                    List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+                    if (appendToSpill(lines)) {
+                        Files.delete(file);
+                        log.info("Recovered {} journaled loan events from {}", lines.size(), file);
+                    }
+                } catch (IOException e) {
+                    log.warn("Could not recover loan event journal segment {}", file, e);
+                }
+            }
+        }
+    }
+
+    // Recovery replays every segment next to the spill file, so no two instances may share it
+    private void claimSpillFile() {
+        Path lockFile = spillFile.resolveSibling(spillFile.getFileName() + ".lock");
+        try {
+            Files.createDirectories(spillFile.toAbsolutePath().getParent());
+            FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock lock;
+            try {
+                lock = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null;
+            }
+            if (Objects.isNull(lock)) {
+                channel.close();
+                throw new IllegalStateException("Loan event spill file " + spillFile + " is used by another instance, " +
+                        "give each instance its own library.loan-history.spill-file");
+            }
+            ownership = channel;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void drain() {
+        List<Journaled> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                Journaled first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                if (Objects.isNull(first)) {
+                    replaySpill();
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<Journaled> batch) {
+        List<LoanEvent> events = batch.stream().map(Journaled::getEvent).collect(Collectors.toList());
+        try {
+            transactionTemplate.executeWithoutResult(status -> insert(events));
+            written.increment(events.size());
+        } catch (RuntimeException e) {
+            log.warn("Could not write {} loan events, spilling them", events.size(), e);
+            if (!spill(events)) {
+                return;
+            }
+        }
+        settle(batch);
+    }
+
+    // Every event is appended to the journal before it is queued, so a crash loses nothing that was recorded.
+    // The appends are not fsynced: an operating system crash can still lose what had not reached the disk.
+    private long journal(LoanEvent event) {
+        synchronized (journalLock) {
+            try {
+                if (Objects.isNull(journal) || segmentEvents >= segmentCapacity) {
+                    openSegment();
+                }
+                journal.write(ByteBuffer.wrap((format(event) + "\n").getBytes(StandardCharsets.UTF_8)));
+                segmentEvents++;
+                unsettled.merge(segment, 1, Integer::sum);
+                return segment;
+            } catch (IOException e) {
+                log.warn("Could not journal loan event {}, it is only queued", format(event), e);
+                return NOT_JOURNALED;
+            }
+        }
+    }
+
+    private void openSegment() throws IOException {
+        if (Objects.nonNull(journal)) {
+            journal.close();
+            journal = null;
+            segment++;
+        }
+        Files.createDirectories(spillFile.toAbsolutePath().getParent());
+        journal = FileChannel.open(segmentFile(segment), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        segmentEvents = 0;
+        unsettled.putIfAbsent(segment, 0);
+        checkpoint();
+    }
+
+    // Settled events are in the table or the spill file, so their journal entries are no longer needed
+    private void settle(List<Journaled> entries) {
+        synchronized (journalLock) {
+            for (Journaled entry : entries) {
+                if (entry.getSegment() != NOT_JOURNALED) {
+                    unsettled.merge(entry.getSegment(), -1, Integer::sum);
+                }
+            }
+            checkpoint();
+        }
+    }
+
+    private void checkpoint() {
+        Iterator<Map.Entry<Long, Integer>> segments = unsettled.entrySet().iterator();
+        while (segments.hasNext()) {
+            Map.Entry<Long, Integer> entry = segments.next();
+            if (entry.getValue() > 0) {
+                continue;
+            }
+            try {
+                if (entry.getKey() == segment && Objects.nonNull(journal)) {
+                    if (segmentEvents > 0) {
+                        journal.truncate(0);
+                        segmentEvents = 0;
+                    }
+                } else {
+                    Files.deleteIfExists(segmentFile(entry.getKey()));
+                    segments.remove();
+                }
+            } catch (IOException e) {
+                log.warn("Could not checkpoint loan event journal segment {}", entry.getKey(), e);
+            }
+        }
+    }
+
+    private void closeJournal() {
+        if (Objects.isNull(journal)) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            log.warn("Could not close the loan event journal", e);
+        }
+        journal = null;
+        checkpoint();
+    }
+
+    private Path segmentFile(long number) {
+        return spillFile.resolveSibling(journalPrefix + number);
+    }
+
+    private void insert(List<LoanEvent> events) {
+        jdbcTemplate.batchUpdate(INSERT, events, events.size(), (statement, event) -> {
+            statement.setInt(1, event.getBookId());
+            statement.setInt(2, event.getPersonId());
+            statement.setString(3, event.getType().name());
+            statement.setTimestamp(4, new Timestamp(event.getOccurredAt().getTime()));
+        });
+    }
+
+    private boolean spill(List<LoanEvent> events) {
+        if (!appendToSpill(events.stream().map(LoanEventLog::format).collect(Collectors.toList()))) {
+            return false;
+        }
+        spilled.increment(events.size());
+        return true;
+    }
+
+    private synchronized boolean appendToSpill(List<String> lines) {
+        try {
+            Files.createDirectories(spillFile.toAbsolutePath().getParent());
+            Files.write(spillFile, lines, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.DSYNC);
+            return true;
+        } catch (IOException e) {
+            log.error("Could not spill loan events, keeping them in the journal: {}", lines, e);
+            return false;
+        }
+    }
+
+    private static String format(LoanEvent event) {
+        return event.getBookId() + "," + event.getPersonId() + "," + event.getType() + "," + event.getOccurredAt().getTime();
+    }
+
+    private static LoanEvent parse(String line) {
+        String[] fields = line.split(",");
+        try {
+            return new LoanEvent(0, Integer.parseInt(fields[0]), Integer.parseInt(fields[1]),
+                    LoanEvent.Type.valueOf(fields[2]), new Date(Long.parseLong(fields[3])));
+        } catch (RuntimeException e) {
+            log.warn("Skipping malformed spilled loan event: {}", line);
+            return null;
+        }
+    }
+
+    private static class Journaled {
+        private final LoanEvent event;
+        private final long segment;
+
+        private Journaled(LoanEvent event, long segment) {
+            this.event = event;
+            this.segment = segment;
+        }
+
+        private LoanEvent getEvent() {
+            return event;
+        }
+
+        private long getSegment() {
+            return segment;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package org.dmitrysulman.spring.secondboot.services;
+
+import io.micrometer.core.annotation.Timed;
+import org.dmitrysulman.spring.secondboot.dto.LoanEvent;
+import org.dmitrysulman.spring.secondboot.dto.LoanHistory;
+import org.dmitrysulman.spring.secondboot.util.LoanCursor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Objects;
+
+@Service
+@Timed(value = "library.service", histogram = true)
+@Transactional(readOnly = true)
+public class LoanHistoryService {
+
+    private static final String SELECT = "select id, book_id, person_id, type, occurred_at from loan_event ";
+
+    private static final RowMapper<LoanEvent> LOAN_EVENT = (rs, rowNum) -> new LoanEvent(rs.getLong("id"),
+            rs.getInt("book_id"), rs.getInt("person_id"), LoanEvent.Type.valueOf(rs.getString("type")),
+            rs.getTimestamp("occurred_at"));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public LoanHistoryService(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public LoanHistory findByBookId(int bookId, LoanCursor before, int limit) {
+        return find("book_id", bookId, before, limit);
+    }
+
+    public LoanHistory findByPersonId(int personId, LoanCursor before, int limit) {
+        return find("person_id", personId, before, limit);
+    }
+
+    // Ordered by when the loan happened rather than by id, since replayed events are inserted late
+    private LoanHistory find(String column, int id, LoanCursor before, int limit) {
+        List<LoanEvent> events = Objects.isNull(before)
+                ? jdbcTemplate.query(SELECT + "where " + column + " = ? order by occurred_at desc, id desc limit ?",
+                        LOAN_EVENT, id, limit + 1)
+                : jdbcTemplate.query(SELECT + "where " + column + " = ? and (occurred_at, id) < (?, ?) " +
+                        "order by occurred_at desc, id desc limit ?", LOAN_EVENT, id, before.getOccurredAt(), before.getId(), limit + 1);
+        if (events.size() <= limit) {
+            return new LoanHistory(events, null);
+        }
+        events = events.subList(0, limit);
+        return new LoanHistory(events, LoanCursor.before(events.get(limit - 1)).encode());
+    }
+}
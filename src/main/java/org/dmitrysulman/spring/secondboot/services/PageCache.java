@@ -0,0 +1,131 @@
+package org.dmitrysulman.spring.secondboot.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.dmitrysulman.spring.secondboot.events.BookChangedEvent;
+import org.dmitrysulman.spring.secondboot.events.BulkImportEvent;
+import org.dmitrysulman.spring.secondboot.events.PersonChangedEvent;
+import org.dmitrysulman.spring.secondboot.models.Book;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Component
+public class PageCache {
+
+    public static final String BOOKS_TAG = "books";
+
+    private final boolean enabled;
+    private final Cache<String, Page> pages;
+    private final AtomicLong generation = new AtomicLong();
+
+    @Autowired
+    public PageCache(MeterRegistry meterRegistry,
+                     @Value("${library.page-cache.enabled:true}") boolean enabled,
+                     @Value("${library.page-cache.max-bytes:33554432}") long maxBytes) {
+        this.enabled = enabled;
+        this.pages = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String key, Page page) -> key.length() + page.getBody().length)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, pages, "pages");
+        Gauge.builder("library.page-cache.hit-ratio", pages, cache -> cache.stats().hitRate())
+                .description("Share of cacheable page requests served from the page cache")
+                .register(meterRegistry);
+    }
+
+    public static String bookTag(int bookId) {
+        return "book:" + bookId;
+    }
+
+    public static String personTag(int personId) {
+        return "person:" + personId;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Page get(String key) {
+        return pages.getIfPresent(key);
+    }
+
+    public long generation() {
+        return generation.get();
+    }
+
+    public synchronized void put(String key, Page page, long renderedAt) {
+        if (generation.get() == renderedAt) {
+            pages.put(key, page);
+        }
+    }
+
+    @TransactionalEventListener
+    public void onBookChanged(BookChangedEvent event) {
+        switch (event.getType()) {
+            case CREATED:
+            case UPDATED:
+            case DELETED:
+                invalidate(BOOKS_TAG, bookTag(event.getBookId()));
+                break;
+            default:
+                invalidate(bookTag(event.getBookId()));
+        }
+    }
+
+    @TransactionalEventListener
+    public void onPersonChanged(PersonChangedEvent event) {
+        invalidate(personTag(event.getPersonId()));
+    }
+
+    @TransactionalEventListener
+    public void onBulkImport(BulkImportEvent event) {
+        if (event.getEntityType() == Book.class) {
+            invalidate(BOOKS_TAG);
+        }
+    }
+
+    private synchronized void invalidate(String... tags) {
+        generation.incrementAndGet();
+        pages.asMap().values().removeIf(page -> {
+            for (String tag : tags) {
+                if (page.getTags().contains(tag)) {
+                    return true;
+                }
+            }
+            return false;
+        });
+    }
+
+    public static class Page {
+        private final String contentType;
+        private final byte[] body;
+        private final Set<String> tags;
+
+        public Page(String contentType, byte[] body, Set<String> tags) {
+            this.contentType = contentType;
+            this.body = body;
+            this.tags = tags;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        public Set<String> getTags() {
+            return tags;
+        }
+    }
+}
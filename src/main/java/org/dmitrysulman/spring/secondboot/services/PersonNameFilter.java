@@ -0,0 +1,119 @@
+package org.dmitrysulman.spring.secondboot.services;
+
+import org.dmitrysulman.spring.secondboot.events.BulkImportEvent;
+import org.dmitrysulman.spring.secondboot.models.Person;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+
+@Component
+public class PersonNameFilter {
+
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final int expectedNames;
+    private BitSet bits;
+    private int size;
+    private int hashes;
+    private long capacity;
+    private long names;
+    private volatile boolean loaded;
+
+    @Autowired
+    public PersonNameFilter(JdbcTemplate jdbcTemplate,
+                            @Value("${library.person-name-filter.enabled:true}") boolean enabled,
+                            @Value("${library.person-name-filter.expected-names:100000}") int expectedNames) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.expectedNames = expectedNames;
+    }
+
+    public boolean mightContain(String fullName) {
+        if (!enabled || Objects.isNull(fullName)) {
+            return true;
+        }
+        ensureLoaded();
+        synchronized (this) {
+            if (!loaded) {
+                return true;
+            }
+            long hash = hash(fullName);
+            for (int i = 0; i < hashes; i++) {
+                if (!bits.get(index(hash, i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    public synchronized void put(String fullName) {
+        if (!loaded || Objects.isNull(fullName)) {
+            return;
+        }
+        long hash = hash(fullName);
+        for (int i = 0; i < hashes; i++) {
+            bits.set(index(hash, i));
+        }
+        names++;
+    }
+
+    @TransactionalEventListener
+    public synchronized void onBulkImport(BulkImportEvent event) {
+        List<Person> people = event.getEntities(Person.class);
+        if (loaded && names + people.size() > capacity) {
+            // Rebuilt at twice the new size on next use, so a long import resizes only a few times
+            loaded = false;
+            bits = null;
+            return;
+        }
+        people.forEach(person -> put(person.getFullName()));
+    }
+
+    private void ensureLoaded() {
+        if (!loaded) {
+            synchronized (this) {
+                if (!loaded) {
+                    Long count = jdbcTemplate.queryForObject("select count(*) from person", Long.class);
+                    capacity = Math.max(expectedNames, 2 * (Objects.isNull(count) ? 0 : count));
+                    size = (int) Math.min(Integer.MAX_VALUE - 1,
+                            Math.ceil(-capacity * Math.log(FALSE_POSITIVE_RATE) / (Math.log(2) * Math.log(2))));
+                    hashes = Math.max(1, (int) Math.round((double) size / capacity * Math.log(2)));
+                    bits = new BitSet(size);
+                    names = 0;
+                    loaded = true;
+                    jdbcTemplate.query("select full_name from person",
+                            (RowCallbackHandler) rs -> put(rs.getString("full_name")));
+                }
+            }
+        }
+    }
+
+    private int index(long hash, int i) {
+        int first = (int) hash;
+        int second = (int) (hash >>> 32);
+        return Math.floorMod(first + i * second, size);
+    }
+
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
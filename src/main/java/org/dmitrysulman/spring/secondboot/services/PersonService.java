@@ -1,39 +1,116 @@
 package org.dmitrysulman.spring.secondboot.services;
 
-import org.dmitrysulman.spring.secondboot.models.Book;
+import io.micrometer.core.annotation.Timed;
+import org.dmitrysulman.spring.secondboot.dto.BookSummary;
+import org.dmitrysulman.spring.secondboot.dto.LoanedBook;
+import org.dmitrysulman.spring.secondboot.dto.PersonBooks;
+import org.dmitrysulman.spring.secondboot.dto.PersonSuggestion;
+import org.dmitrysulman.spring.secondboot.dto.PersonView;
+import org.dmitrysulman.spring.secondboot.events.BookChangedEvent;
+import org.dmitrysulman.spring.secondboot.events.PersonChangedEvent;
 import org.dmitrysulman.spring.secondboot.models.Person;
+import org.dmitrysulman.spring.secondboot.repositories.BookRepository;
 import org.dmitrysulman.spring.secondboot.repositories.PersonRepository;
-import org.hibernate.Hibernate;
+import org.dmitrysulman.spring.secondboot.util.LoanPolicy;
+import org.dmitrysulman.spring.secondboot.util.ResourceVersion;
+import org.hibernate.exception.ConstraintViolationException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.util.UriComponentsBuilder;
 
-import java.time.LocalDateTime;
-import java.time.ZoneOffset;
-import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
 import java.util.Optional;
 
 @Service
+@Timed(value = "library.service", histogram = true)
 @Transactional(readOnly = true)
 public class PersonService {
 
+    public static final String FULL_NAME_CONSTRAINT = "person_full_name_key";
+
+    private static final int DEFAULT_BOOKS_PER_PAGE = 20;
+    private static final int DEFAULT_PEOPLE_PER_PAGE = 20;
+
     private final PersonRepository personRepository;
+    private final BookRepository bookRepository;
+    private final PersonNameFilter personNameFilter;
+    private final SecondLevelCacheEvictor cacheEvictor;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Autowired
-    public PersonService(PersonRepository personRepository) {
+    public PersonService(PersonRepository personRepository, BookRepository bookRepository,
+                         PersonNameFilter personNameFilter, SecondLevelCacheEvictor cacheEvictor,
+                         ApplicationEventPublisher eventPublisher) {
         this.personRepository = personRepository;
+        this.bookRepository = bookRepository;
+        this.personNameFilter = personNameFilter;
+        this.cacheEvictor = cacheEvictor;
+        this.eventPublisher = eventPublisher;
     }
 
     public List<Person> findAll() {
         return personRepository.findAll();
     }
 
+    public Slice<PersonSuggestion> findByFullNameStartingWith(String prefix, Integer page, Integer peoplePerPage) {
+        if (Objects.isNull(prefix)) {
+            prefix = "";
+        }
+        if (Objects.isNull(page)) {
+            page = 0;
+        }
+        if (Objects.isNull(peoplePerPage)) {
+            peoplePerPage = DEFAULT_PEOPLE_PER_PAGE;
+        }
+        // Names are unique, so they order the list on their own and the unfiltered page walks person_full_name_key
+        PageRequest pageRequest = PageRequest.of(page, peoplePerPage, Sort.by("fullName"));
+        if (prefix.isEmpty()) {
+            return personRepository.findAllBy(pageRequest);
+        }
+        return personRepository.findByFullNameStartingWithIgnoreCase(prefix, pageRequest);
+    }
+
     public Optional<Person> findOne(int id) {
         return personRepository.findById(id);
     }
 
+    public Optional<ResourceVersion> findVersion(int id) {
+        return personRepository.findRevisionById(id).map(revision -> {
+            Date loansUpdatedAt = revision.getLoansUpdatedAt();
+            Date lastModified = Objects.nonNull(loansUpdatedAt) && loansUpdatedAt.after(revision.getUpdatedAt())
+                    ? loansUpdatedAt : revision.getUpdatedAt();
+            return new ResourceVersion(revision.getVersion() + "-" + revision.getLoans() + "-" +
+                    (Objects.isNull(loansUpdatedAt) ? 0 : loansUpdatedAt.getTime()), lastModified);
+        });
+    }
+
+    public Optional<PersonView> findView(int id) {
+        return personRepository.findById(id).map(person -> new PersonView(person.getId(), person.getFullName(),
+                person.getYearOfBirth(), person.getVersion(), findBooks(id, 0, DEFAULT_BOOKS_PER_PAGE)));
+    }
+
+    public PersonBooks findBooks(int id, int afterId, int limit) {
+        Slice<BookSummary> books = bookRepository.findSummariesByPersonIdAfterId(id, afterId, PageRequest.of(0, limit));
+        String next = null;
+        if (books.hasNext()) {
+            next = UriComponentsBuilder.fromPath("/api/people/{id}/books")
+                    .queryParam("after", books.getContent().get(books.getNumberOfElements() - 1).getId())
+                    .queryParam("limit", limit)
+                    .buildAndExpand(id)
+                    .toUriString();
+        }
+        return new PersonBooks(books.getContent(), next);
+    }
+
     public Optional<Person> findByFullName(String fullName) {
         return personRepository.findByFullName(fullName);
     }
@@ -41,42 +118,59 @@ public class PersonService {
     @Transactional
     public int save(Person person) {
         person = personRepository.save(person);
+        personNameFilter.put(person.getFullName());
         return person.getId();
     }
 
     @Transactional
     public Boolean update(int id, Person person) {
-        if (!personRepository.existsById(id)) {
+        cacheEvictor.lockPerson(id);
+        if (personRepository.updateDetails(id, person) == 0) {
             return false;
-        } else {
-            person.setId(id);
-            personRepository.save(person);
         }
+        personNameFilter.put(person.getFullName());
+        eventPublisher.publishEvent(PersonChangedEvent.updated(id));
         return true;
     }
 
     @Transactional
     public Boolean delete(int id) {
-        if (!personRepository.existsById(id)) {
+        // Read first so the returns can be logged; the release itself stays one statement
+        List<Integer> heldBookIds = bookRepository.findIdsByPersonId(id);
+        cacheEvictor.lockBooks(heldBookIds);
+        cacheEvictor.lockBooksOf(id);
+        cacheEvictor.lockPerson(id);
+        bookRepository.releaseAllByPersonId(id);
+        if (personRepository.deleteOne(id) == 0) {
             return false;
-        } else {
-            personRepository.deleteById(id);
         }
+        heldBookIds.forEach(bookId -> eventPublisher.publishEvent(BookChangedEvent.released(bookId, id)));
+        eventPublisher.publishEvent(PersonChangedEvent.deleted(id));
         return true;
     }
 
-    public List<Book> getBooksOfPersonById(int id) {
-        Optional<Person> person = personRepository.findById(id);
-        if (person.isPresent()) {
-            Hibernate.initialize(person.get().getBooks());
-            person.get().getBooks().forEach(
-                    book -> book.setBookOverdue(
-                            book.getDateTaken().before(Date.from(LocalDateTime.now().minusDays(10).toInstant(ZoneOffset.UTC)))
-                    )
-            );
-            return person.get().getBooks();
-        } else {
-            return Collections.emptyList();
+    public boolean mightExist(String fullName) {
+        return personNameFilter.mightContain(fullName);
+    }
+
+    public static boolean isDuplicateName(DataIntegrityViolationException e) {
+        Throwable cause = e.getCause();
+        return cause instanceof ConstraintViolationException
+                && Objects.nonNull(((ConstraintViolationException) cause).getConstraintName())
+                && ((ConstraintViolationException) cause).getConstraintName().toLowerCase(Locale.ROOT).contains(FULL_NAME_CONSTRAINT);
+    }
+
+    public Slice<LoanedBook> getBooksOfPersonById(int id, Integer page, Integer booksPerPage) {
+        if (Objects.isNull(page)) {
+            page = 0;
+        }
+        if (Objects.isNull(booksPerPage)) {
+            booksPerPage = DEFAULT_BOOKS_PER_PAGE;
         }
+        return bookRepository.findLoansByPersonId(id, LoanPolicy.overdueBefore(), PageRequest.of(page, booksPerPage));
+    }
+
+    public BookRepository.LoanSummary getLoanSummary(int id) {
+        return bookRepository.summarizeLoansByPersonId(id, LoanPolicy.overdueBefore());
     }
 }
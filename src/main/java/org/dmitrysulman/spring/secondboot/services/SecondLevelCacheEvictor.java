@@ -0,0 +1,112 @@
+package org.dmitrysulman.spring.secondboot.services;
+
+import org.dmitrysulman.spring.secondboot.events.BookChangedEvent;
+import org.dmitrysulman.spring.secondboot.events.BulkImportEvent;
+import org.dmitrysulman.spring.secondboot.events.PersonChangedEvent;
+import org.dmitrysulman.spring.secondboot.models.Book;
+import org.dmitrysulman.spring.secondboot.models.Person;
+import org.hibernate.Cache;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.cache.spi.access.CachedDomainDataAccess;
+import org.hibernate.cache.spi.access.SoftLock;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.collection.CollectionPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceContext;
+import java.util.Collection;
+import java.util.Objects;
+
+// Native DML leaves the cache regions alone (see BookRepository.NATIVE_DML_SPACE). Callers soft-lock the entries a
+// statement is about to change, the same way Hibernate does for its own updates: a locked entry reads as a miss, and
+// a reader whose transaction started before the unlock cannot put the old row back. Evicting after commit instead
+// would let such a reader cache the old row again for the whole TTL.
+//
+// What is still only evicted after commit: the books of every reader when a deleted book's holder is unknown, and the
+// person lookup queries. A reader that loaded either before the commit can put it back until the next eviction.
+@Component
+public class SecondLevelCacheEvictor {
+
+    private static final String PERSON_BOOKS_ROLE = Person.class.getName() + ".books";
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    public SecondLevelCacheEvictor(EntityManagerFactory entityManagerFactory) {
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    public void lockBook(int id) {
+        lockEntity(Book.class, id);
+    }
+
+    public void lockBooks(Collection<Integer> ids) {
+        ids.forEach(this::lockBook);
+    }
+
+    public void lockPerson(int id) {
+        lockEntity(Person.class, id);
+    }
+
+    public void lockBooksOf(int personId) {
+        SessionImplementor session = session();
+        CollectionPersister persister = session.getFactory().getMetamodel().collectionPersister(PERSON_BOOKS_ROLE);
+        if (persister.hasCache()) {
+            lock(session, persister.getCacheAccessStrategy(), persister.getCacheAccessStrategy()
+                    .generateCacheKey(personId, persister, session.getFactory(), session.getTenantIdentifier()));
+        }
+    }
+
+    @TransactionalEventListener
+    public void onBookChanged(BookChangedEvent event) {
+        if (event.getType() == BookChangedEvent.Type.DELETED && Objects.isNull(event.getPersonId())) {
+            // The holder of a deleted book is not known without another read
+            cache().evictCollectionData(PERSON_BOOKS_ROLE);
+        }
+    }
+
+    @TransactionalEventListener
+    public void onPersonChanged(PersonChangedEvent event) {
+        // Only the person lookups are cacheable queries
+        cache().evictDefaultQueryRegion();
+    }
+
+    @TransactionalEventListener
+    public void onBulkImport(BulkImportEvent event) {
+        cache().evictQueryRegions();
+    }
+
+    private void lockEntity(Class<?> type, int id) {
+        SessionImplementor session = session();
+        SessionFactoryImplementor factory = session.getFactory();
+        EntityPersister persister = factory.getMetamodel().entityPersister(type);
+        if (persister.canWriteToCache()) {
+            lock(session, persister.getCacheAccessStrategy(), persister.getCacheAccessStrategy()
+                    .generateCacheKey(id, persister, factory, session.getTenantIdentifier()));
+        }
+    }
+
+    // Released once the transaction ends, whether it commits or rolls back
+    private static void lock(SessionImplementor session, CachedDomainDataAccess access, Object key) {
+        SoftLock lock = access.lockItem(session, key, null);
+        session.getActionQueue().registerProcess((AfterTransactionCompletionProcess) (success, completed) ->
+                access.unlockItem(completed, key, lock));
+    }
+
+    private SessionImplementor session() {
+        return entityManager.unwrap(SessionImplementor.class);
+    }
+
+    private Cache cache() {
+        return entityManagerFactory.getCache().unwrap(Cache.class);
+    }
+}
@@ -0,0 +1,71 @@
+package org.dmitrysulman.spring.secondboot.util;
+
+import org.dmitrysulman.spring.secondboot.dto.BookSummary;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Optional;
+
+public class BookCursor {
+    private final boolean sortByYear;
+    private final boolean backward;
+    private final int year;
+    private final int id;
+
+    private BookCursor(boolean sortByYear, boolean backward, int year, int id) {
+        this.sortByYear = sortByYear;
+        this.backward = backward;
+        this.year = year;
+        this.id = id;
+    }
+
+    public static BookCursor first(boolean sortByYear) {
+        return new BookCursor(sortByYear, false, Integer.MIN_VALUE, Integer.MIN_VALUE);
+    }
+
+    public static BookCursor after(BookSummary book, boolean sortByYear) {
+        return new BookCursor(sortByYear, false, book.getYear(), book.getId());
+    }
+
+    public static BookCursor before(BookSummary book, boolean sortByYear) {
+        return new BookCursor(sortByYear, true, book.getYear(), book.getId());
+    }
+
+    public static Optional<BookCursor> decode(String cursor) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+            if (parts.length != 4) {
+                return Optional.empty();
+            }
+            return Optional.of(new BookCursor(parts[0].equals("y"), parts[1].equals("b"),
+                    Integer.parseInt(parts[2]), Integer.parseInt(parts[3])));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    public String encode() {
+        String raw = (sortByYear ? "y" : "i") + ":" + (backward ? "b" : "f") + ":" + year + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public boolean isFirst() {
+        return !backward && year == Integer.MIN_VALUE && id == Integer.MIN_VALUE;
+    }
+
+    public boolean isSortByYear() {
+        return sortByYear;
+    }
+
+    public boolean isBackward() {
+        return backward;
+    }
+
+    public int getYear() {
+        return year;
+    }
+
+    public int getId() {
+        return id;
+    }
+}
@@ -0,0 +1,49 @@
+package org.dmitrysulman.spring.secondboot.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Optional;
+
+public class ChangeCursor {
+    private final long changeXid;
+    private final int id;
+
+    private ChangeCursor(long changeXid, int id) {
+        this.changeXid = changeXid;
+        this.id = id;
+    }
+
+    public static ChangeCursor first() {
+        return new ChangeCursor(0, 0);
+    }
+
+    public static ChangeCursor after(long changeXid, int id) {
+        return new ChangeCursor(changeXid, id);
+    }
+
+    public static Optional<ChangeCursor> decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split(":", -1);
+            if (parts.length != 2) {
+                return Optional.empty();
+            }
+            return Optional.of(new ChangeCursor(Long.parseLong(parts[0]), Integer.parseInt(parts[1])));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    public String encode() {
+        String raw = changeXid + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public long getChangeXid() {
+        return changeXid;
+    }
+
+    public int getId() {
+        return id;
+    }
+}
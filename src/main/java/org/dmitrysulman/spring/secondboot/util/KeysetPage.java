@@ -0,0 +1,41 @@
+package org.dmitrysulman.spring.secondboot.util;
+
+import java.util.List;
+
+public class KeysetPage<T> {
+    private final List<T> content;
+    private final int size;
+    private final String previousCursor;
+    private final String nextCursor;
+
+    public KeysetPage(List<T> content, int size, String previousCursor, String nextCursor) {
+        this.content = content;
+        this.size = size;
+        this.previousCursor = previousCursor;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public String getPreviousCursor() {
+        return previousCursor;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasPrevious() {
+        return previousCursor != null;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
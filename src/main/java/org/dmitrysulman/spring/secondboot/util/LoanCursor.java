@@ -0,0 +1,47 @@
+package org.dmitrysulman.spring.secondboot.util;
+
+import org.dmitrysulman.spring.secondboot.dto.LoanEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Base64;
+import java.util.Optional;
+
+public class LoanCursor {
+    private final long occurredAt;
+    private final long id;
+
+    private LoanCursor(long occurredAt, long id) {
+        this.occurredAt = occurredAt;
+        this.id = id;
+    }
+
+    public static LoanCursor before(LoanEvent event) {
+        return new LoanCursor(event.getOccurredAt().getTime(), event.getId());
+    }
+
+    public static Optional<LoanCursor> decode(String cursor) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+            if (parts.length != 2) {
+                return Optional.empty();
+            }
+            return Optional.of(new LoanCursor(Long.parseLong(parts[0]), Long.parseLong(parts[1])));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    public String encode() {
+        String raw = occurredAt + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Timestamp getOccurredAt() {
+        return new Timestamp(occurredAt);
+    }
+
+    public long getId() {
+        return id;
+    }
+}
@@ -0,0 +1,16 @@
+package org.dmitrysulman.spring.secondboot.util;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+
+public final class LoanPolicy {
+    public static final int LOAN_PERIOD_DAYS = 10;
+
+    private LoanPolicy() {
+    }
+
+    public static Date overdueBefore() {
+        return Date.from(Instant.now().minus(LOAN_PERIOD_DAYS, ChronoUnit.DAYS));
+    }
+}
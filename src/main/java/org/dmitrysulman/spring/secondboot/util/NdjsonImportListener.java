@@ -0,0 +1,52 @@
+package org.dmitrysulman.spring.secondboot.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dmitrysulman.spring.secondboot.dto.ImportProgress;
+import org.dmitrysulman.spring.secondboot.services.ImportService;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class NdjsonImportListener implements ImportService.Listener {
+    private final ObjectMapper objectMapper;
+    private final Writer writer;
+
+    public NdjsonImportListener(ObjectMapper objectMapper, Writer writer) {
+        this.objectMapper = objectMapper;
+        this.writer = writer;
+    }
+
+    @Override
+    public void onRejected(long record, String message) {
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("type", "rejected");
+        line.put("record", record);
+        line.put("message", message);
+        write(line, false);
+    }
+
+    @Override
+    public void onProgress(ImportProgress progress) {
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("type", "progress");
+        line.put("processed", progress.getProcessed());
+        line.put("imported", progress.getImported());
+        line.put("rejected", progress.getRejected());
+        write(line, true);
+    }
+
+    private void write(Map<String, Object> line, boolean flush) {
+        try {
+            writer.write(objectMapper.writeValueAsString(line));
+            writer.write('\n');
+            if (flush) {
+                writer.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
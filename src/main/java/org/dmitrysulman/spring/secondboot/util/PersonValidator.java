@@ -11,6 +11,8 @@ import java.util.Optional;
 
 @Component
 public class PersonValidator implements Validator {
+    public static final String DUPLICATE_NAME = "This name already exist";
+
     private final PersonService personService;
 
     @Autowired
@@ -26,9 +28,16 @@ public class PersonValidator implements Validator {
     @Override
     public void validate(Object target, Errors errors) {
         Person person = (Person) target;
+        if (!personService.mightExist(person.getFullName())) {
+            return;
+        }
         Optional<Person> personWithSameName = personService.findByFullName(person.getFullName());
         if (personWithSameName.isPresent() && person.getId() != personWithSameName.get().getId()) {
-            errors.rejectValue("fullName", "", "This name already exist");
+            rejectDuplicate(errors);
         }
     }
+
+    public void rejectDuplicate(Errors errors) {
+        errors.rejectValue("fullName", "", DUPLICATE_NAME);
+    }
 }
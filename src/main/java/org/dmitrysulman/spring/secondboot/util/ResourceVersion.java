@@ -0,0 +1,43 @@
+package org.dmitrysulman.spring.secondboot.util;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.context.request.WebRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+public class ResourceVersion {
+    private final String eTag;
+    private final long lastModified;
+
+    public ResourceVersion(String eTag, Date lastModified) {
+        this.eTag = eTag;
+        this.lastModified = Objects.isNull(lastModified) ? -1 : lastModified.getTime();
+    }
+
+    public static ResourceVersion digest(Collection<String> parts, Date lastModified) {
+        String joined = String.join(",", parts);
+        return new ResourceVersion(DigestUtils.md5DigestAsHex(joined.getBytes(StandardCharsets.UTF_8)), lastModified);
+    }
+
+    public <T> ResponseEntity<T> respond(WebRequest request, Supplier<T> body) {
+        if (request.checkNotModified(eTag, lastModified)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).cacheControl(CacheControl.noCache()).build();
+        }
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache()).body(body.get());
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+}
@@ -0,0 +1,16 @@
+create table if not exists person
+(
+    id            integer generated by default as identity primary key,
+    full_name     varchar(100) not null,
+    year_of_birth integer      not null
+);
+
+create table if not exists book
+(
+    id         integer generated by default as identity primary key,
+    title      varchar(200) not null,
+    author     varchar(400) not null,
+    year       integer      not null,
+    person_id  integer references person (id) on delete set null,
+    date_taken timestamp
+);
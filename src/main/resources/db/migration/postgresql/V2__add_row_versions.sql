@@ -0,0 +1,5 @@
+alter table person add column if not exists version integer not null default 0;
+alter table person add column if not exists updated_at timestamp(3) not null default current_timestamp;
+
+alter table book add column if not exists version integer not null default 0;
+alter table book add column if not exists updated_at timestamp(3) not null default current_timestamp;
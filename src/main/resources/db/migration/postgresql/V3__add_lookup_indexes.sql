@@ -0,0 +1,22 @@
+-- Databases that predate the constraint may hold a name more than once. Every copy but the oldest gets its id
+-- appended, so the unique index can be built; the people keep their ids, books and history. Should a renamed copy
+-- collide with a name that already ends that way, the migration fails and that pair has to be renamed by hand.
+update person
+set full_name = left(full_name, 100 - length(' #' || id)) || ' #' || id
+where exists (select 1 from person older where older.full_name = person.full_name and older.id < person.id);
+
+-- PersonService.isDuplicateName matches on this name
+create unique index if not exists person_full_name_key on person (full_name);
+
+-- Case-insensitive prefix searches compile to upper(column) like 'PREFIX%'
+create index if not exists person_upper_full_name_idx on person (upper(full_name) text_pattern_ops);
+create index if not exists book_upper_title_idx on book (upper(title) text_pattern_ops);
+
+-- Loans of a person, ordered by date taken
+create index if not exists book_person_loans_idx on book (person_id, date_taken, id);
+-- Overdue report
+create index if not exists book_date_taken_idx on book (date_taken);
+-- Keyset pages sorted by year
+create index if not exists book_year_id_idx on book (year, id);
+-- Change feed of the JSON API
+create index if not exists book_updated_at_idx on book (updated_at, id);
@@ -0,0 +1,13 @@
+-- Append-only loan history written by LoanEventLog. No foreign keys: events
+-- outlive the books and people they mention and arrive after the loan commits.
+create table if not exists loan_event
+(
+    id          bigint generated by default as identity primary key,
+    book_id     integer     not null,
+    person_id   integer     not null,
+    type        varchar(16) not null,
+    occurred_at timestamp(3) not null
+);
+
+create index if not exists loan_event_book_idx on loan_event (book_id, occurred_at, id);
+create index if not exists loan_event_person_idx on loan_event (person_id, occurred_at, id);
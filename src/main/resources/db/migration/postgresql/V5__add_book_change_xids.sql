@@ -0,0 +1,37 @@
+-- Change feed positions. Every insert and update of a book stamps the row with the id of the writing transaction,
+-- and every delete leaves a tombstone stamped the same way. Nothing is locked: the feed only returns changes of
+-- transactions older than the xmin of its snapshot. Those have all finished, so a transaction that commits later
+-- can never land behind a cursor that was already handed out. A long-running transaction holds the feed back
+-- until it ends.
+create table if not exists book_tombstone
+(
+    book_id    integer primary key,
+    change_xid bigint not null
+);
+create index if not exists book_tombstone_change_xid_idx on book_tombstone (change_xid, book_id);
+
+alter table book add column if not exists change_xid bigint not null default txid_current();
+create index if not exists book_change_xid_idx on book (change_xid, id);
+
+create or replace function stamp_book_change() returns trigger as $$
+begin
+    new.change_xid := txid_current();
+    return new;
+end;
+$$ language plpgsql;
+
+create or replace function record_book_tombstone() returns trigger as $$
+begin
+    insert into book_tombstone (book_id, change_xid) values (old.id, txid_current())
+        on conflict (book_id) do update set change_xid = excluded.change_xid;
+    return old;
+end;
+$$ language plpgsql;
+
+drop trigger if exists book_change_stamp on book;
+create trigger book_change_stamp before insert or update on book
+    for each row execute procedure stamp_book_change();
+
+drop trigger if exists book_tombstone_record on book;
+create trigger book_tombstone_record after delete on book
+    for each row execute procedure record_book_tombstone();
@@ -0,0 +1,2 @@
+-- The change feed and the title index snapshot moved to book.change_xid
+drop index if exists book_updated_at_idx;
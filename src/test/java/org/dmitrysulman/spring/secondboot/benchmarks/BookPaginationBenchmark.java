@@ -0,0 +1,101 @@
+package org.dmitrysulman.spring.secondboot.benchmarks;
+
+import org.dmitrysulman.spring.secondboot.dto.BookSummary;
+import org.dmitrysulman.spring.secondboot.services.BookService;
+import org.dmitrysulman.spring.secondboot.util.BookCursor;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+@Tag("benchmark")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class BookPaginationBenchmark {
+
+    private static final int BOOKS = Integer.getInteger("benchmark.books", 200_000);
+    private static final int BOOKS_PER_PAGE = 10;
+    private static final int[] DEPTHS = {0, 100, 1_000, 10_000};
+    private static final int ITERATIONS = 20;
+
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeAll
+    void populate() {
+        Random random = new Random(42);
+        List<Object[]> rows = new ArrayList<>(BOOKS);
+        for (int i = 0; i < BOOKS; i++) {
+            rows.add(new Object[]{"Title " + i, "Author " + random.nextInt(10_000), 1900 + random.nextInt(123)});
+        }
+        jdbcTemplate.batchUpdate("insert into book (title, author, year) values (?, ?, ?)", rows);
+    }
+
+    @AfterAll
+    void cleanUp() {
+        jdbcTemplate.update("delete from book");
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void offsetVersusKeyset(boolean sortByYear) {
+        System.out.printf("%n%d books, %d per page, sort_by_year=%b%n", BOOKS, BOOKS_PER_PAGE, sortByYear);
+        System.out.printf("%10s %14s %14s%n", "page", "offset, ms", "keyset, ms");
+        for (int page : DEPTHS) {
+            if (page * BOOKS_PER_PAGE >= BOOKS) {
+                break;
+            }
+            BookCursor cursor = cursorForPage(page, sortByYear);
+            assertEquals(
+                    ids(bookService.findAll(page, BOOKS_PER_PAGE, sortByYear).getContent()),
+                    ids(bookService.findAll(cursor, BOOKS_PER_PAGE).getContent()));
+
+            double offset = averageMillis(() -> bookService.findAll(page, BOOKS_PER_PAGE, sortByYear));
+            double keyset = averageMillis(() -> bookService.findAll(cursor, BOOKS_PER_PAGE));
+            System.out.printf("%10d %14.3f %14.3f%n", page, offset, keyset);
+        }
+    }
+
+    private BookCursor cursorForPage(int page, boolean sortByYear) {
+        if (page == 0) {
+            return BookCursor.first(sortByYear);
+        }
+        String order = sortByYear ? "year, id" : "id";
+        BookSummary previous = jdbcTemplate.queryForObject(
+                "select id, year from book order by " + order + " limit 1 offset ?",
+                (rs, rowNum) -> new BookSummary(rs.getInt("id"), null, null, rs.getInt("year")),
+                page * BOOKS_PER_PAGE - 1);
+        return BookCursor.after(previous, sortByYear);
+    }
+
+    private static double averageMillis(Supplier<?> query) {
+        for (int i = 0; i < ITERATIONS; i++) {
+            query.get();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            query.get();
+        }
+        return (System.nanoTime() - start) / 1_000_000.0 / ITERATIONS;
+    }
+
+    private static List<Integer> ids(List<BookSummary> books) {
+        return books.stream().map(BookSummary::getId).collect(Collectors.toList());
+    }
+}
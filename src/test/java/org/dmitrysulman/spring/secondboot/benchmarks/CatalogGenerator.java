@@ -0,0 +1,83 @@
+package org.dmitrysulman.spring.secondboot.benchmarks;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+public class CatalogGenerator {
+
+    private static final String[] WORDS = {
+            "Silent", "River", "Garden", "Winter", "Empire", "Shadow", "Letters", "Island", "Journey", "Stone",
+            "Crimson", "Harbor", "Mirror", "Forest", "Secret", "Engine", "Orchard", "Tide", "Lantern", "Valley",
+            "Broken", "Kingdom", "Glass", "Memory", "Northern", "Storm", "Hidden", "Bridge", "Golden", "Night",
+            "Distant", "Castle", "Paper", "Autumn", "Wild", "Ocean", "Ancient", "City", "Quiet", "Fire"
+    };
+    private static final int BATCH_SIZE = 10_000;
+    private static final double LOAN_RATE = 0.6;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long seed;
+
+    public CatalogGenerator(JdbcTemplate jdbcTemplate, long seed) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.seed = seed;
+    }
+
+    public static int peopleFor(int books) {
+        return Math.max(books / 20, 10);
+    }
+
+    public static String fullName(int person) {
+        return "Reader " + person;
+    }
+
+    public static String title(Random random, int book) {
+        return WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + book;
+    }
+
+    public void generate(int books) {
+        Random random = new Random(seed);
+        int people = peopleFor(books);
+        List<Object[]> rows = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < people; i++) {
+            rows.add(new Object[]{fullName(i), 1940 + random.nextInt(70)});
+            if (rows.size() == BATCH_SIZE) {
+                jdbcTemplate.batchUpdate("insert into person (full_name, year_of_birth) values (?, ?)", rows);
+                rows.clear();
+            }
+        }
+        jdbcTemplate.batchUpdate("insert into person (full_name, year_of_birth) values (?, ?)", rows);
+        rows.clear();
+
+        int firstPerson = minId("person");
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < books; i++) {
+            Integer personId = null;
+            Timestamp dateTaken = null;
+            if (random.nextDouble() < LOAN_RATE) {
+                personId = firstPerson + random.nextInt(people);
+                dateTaken = new Timestamp(now - TimeUnit.HOURS.toMillis(random.nextInt(30 * 24)));
+            }
+            rows.add(new Object[]{title(random, i), "Author " + random.nextInt(Math.max(books / 10, 1)),
+                    1900 + random.nextInt(123), personId, dateTaken});
+            if (rows.size() == BATCH_SIZE) {
+                insertBooks(rows);
+                rows.clear();
+            }
+        }
+        insertBooks(rows);
+    }
+
+    private void insertBooks(List<Object[]> rows) {
+        jdbcTemplate.batchUpdate("insert into book (title, author, year, person_id, date_taken) values (?, ?, ?, ?, ?)", rows);
+    }
+
+    private int minId(String table) {
+        Integer id = jdbcTemplate.queryForObject("select min(id) from " + table, Integer.class);
+        return id == null ? 0 : id;
+    }
+}
@@ -0,0 +1,102 @@
+package org.dmitrysulman.spring.secondboot.benchmarks;
+
+import org.dmitrysulman.spring.secondboot.services.BookService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+@Tag("benchmark")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class CheckoutContentionBenchmark {
+
+    private static final int THREADS = Integer.getInteger("benchmark.threads", 64);
+    private static final int HOT_BOOKS = Integer.getInteger("benchmark.hot-books", 4);
+    private static final int ROUNDS = Integer.getInteger("benchmark.rounds", 50);
+
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final List<Integer> bookIds = new ArrayList<>();
+    private final List<Integer> personIds = new ArrayList<>();
+
+    @BeforeAll
+    void populate() {
+        for (int i = 0; i < HOT_BOOKS; i++) {
+            jdbcTemplate.update("insert into book (title, author, year) values (?, 'Hot Author', 2000)", "Hot book " + i);
+        }
+        for (int i = 0; i < THREADS; i++) {
+            jdbcTemplate.update("insert into person (full_name, year_of_birth) values (?, 1990)", "Reader number " + i);
+        }
+        bookIds.addAll(jdbcTemplate.queryForList("select id from book order by id", Integer.class));
+        personIds.addAll(jdbcTemplate.queryForList("select id from person order by id", Integer.class));
+    }
+
+    @AfterAll
+    void cleanUp() {
+        jdbcTemplate.update("delete from book");
+        jdbcTemplate.update("delete from person");
+    }
+
+    @Test
+    void concurrentCheckoutsOfHotBooks() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        Map<BookService.CheckoutResult, Integer> totals = new EnumMap<>(BookService.CheckoutResult.class);
+        long elapsed = 0;
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                jdbcTemplate.update("update book set person_id = null, date_taken = null");
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<BookService.CheckoutResult>> results = new ArrayList<>(THREADS);
+                for (int i = 0; i < THREADS; i++) {
+                    int bookId = bookIds.get(i % HOT_BOOKS);
+                    int personId = personIds.get(i);
+                    results.add(executor.submit(() -> {
+                        start.await();
+                        return bookService.assign(bookId, personId);
+                    }));
+                }
+                long begin = System.nanoTime();
+                start.countDown();
+                Map<BookService.CheckoutResult, Integer> outcomes = new EnumMap<>(BookService.CheckoutResult.class);
+                for (Future<BookService.CheckoutResult> result : results) {
+                    outcomes.merge(result.get(), 1, Integer::sum);
+                }
+                elapsed += System.nanoTime() - begin;
+
+                assertEquals(HOT_BOOKS, outcomes.getOrDefault(BookService.CheckoutResult.ASSIGNED, 0));
+                assertEquals(THREADS - HOT_BOOKS, outcomes.getOrDefault(BookService.CheckoutResult.ALREADY_TAKEN, 0));
+                assertEquals(HOT_BOOKS, jdbcTemplate.queryForObject(
+                        "select count(*) from book where person_id is not null", Integer.class));
+                outcomes.forEach((outcome, count) -> totals.merge(outcome, count, Integer::sum));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        double seconds = elapsed / 1_000_000_000.0;
+        System.out.printf("%n%d threads, %d hot books, %d rounds%n", THREADS, HOT_BOOKS, ROUNDS);
+        System.out.printf("%-16s %10s%n", "outcome", "count");
+        totals.forEach((outcome, count) -> System.out.printf("%-16s %10d%n", outcome, count));
+        System.out.printf("%-16s %10.0f%n", "checkouts/s", THREADS * ROUNDS / seconds);
+    }
+}
@@ -0,0 +1,383 @@
+package org.dmitrysulman.spring.secondboot.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@Tag("benchmark")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class HttpLoadBenchmark {
+
+    private static final int BOOKS = Integer.getInteger("benchmark.books", 20_000);
+    private static final int CONCURRENCY = Integer.getInteger("benchmark.concurrency", 16);
+    private static final int WARMUP_SECONDS = Integer.getInteger("benchmark.warmup-seconds", 5);
+    private static final int DURATION_SECONDS = Integer.getInteger("benchmark.duration-seconds", 20);
+    private static final long GATE_P95_MILLIS = Long.getLong("benchmark.gate.p95-ms", 0);
+    private static final String GATE_BASELINE = System.getProperty("benchmark.gate.baseline", "");
+    private static final double GATE_TOLERANCE = Double.parseDouble(System.getProperty("benchmark.gate.tolerance", "0.2"));
+    private static final Path REPORT = Path.of("target", "load-report.json");
+    private static final String[] SEARCH_TERMS = {"river", "silent garden", "winter", "empire sha", "glass", "ocean"};
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private final List<Route> routes = new ArrayList<>();
+    private List<Integer> bookIds;
+    private List<Integer> freeBookIds;
+    private List<Integer> personIds;
+
+    @BeforeAll
+    void populate() {
+        new CatalogGenerator(jdbcTemplate, 42).generate(BOOKS);
+        bookIds = jdbcTemplate.queryForList("select id from book order by id", Integer.class);
+        freeBookIds = jdbcTemplate.queryForList("select id from book where person_id is null order by id", Integer.class);
+        personIds = jdbcTemplate.queryForList("select id from person order by id", Integer.class);
+
+        int pages = BOOKS / 20;
+        route("GET /books", 12, user -> get("/books?page=" + user.random.nextInt(pages) + "&books_per_page=20"));
+        route("GET /books?sort_by_year", 4, user -> get("/books?page=" + user.random.nextInt(pages) + "&books_per_page=20&sort_by_year=true"));
+        route("GET /books?cursor", 4, user -> get("/books?cursor=&books_per_page=20"));
+        route("GET /books/{id}", 14, user -> get("/books/" + user.pick(bookIds)));
+        route("GET /books/{id}/edit", 2, user -> get("/books/" + user.pick(bookIds) + "/edit"));
+        route("GET /books/add", 1, user -> get("/books/add"));
+        route("GET /books/search", 8, user -> get("/books/search?text=" + encode(user.pick(SEARCH_TERMS))));
+        route("GET /books/autocomplete", 8, user -> get("/books/autocomplete?text=" + encode(user.pick(SEARCH_TERMS).substring(0, 3))));
+        route("GET /books/overdue", 1, user -> get("/books/overdue"));
+        route("GET /books/export", 1, user -> get("/books/export"));
+        route("POST /books/{id}/edit", 2, user -> {
+            int bookId = user.pick(bookIds);
+            return post("/books/" + bookId + "/edit", form("title", "Edited title " + bookId, "author", "Edited author", "year", "2001"));
+        });
+        route("POST /books/add", 1, user -> post("/books/add", form("title", "Load title", "author", "Load author", "year", "2000")));
+        route("POST /books/{id}/delete", 1, user -> user.createdBooks.isEmpty()
+                ? null
+                : post("/books/" + user.createdBooks.pop() + "/delete", ""));
+        route("POST /books/{id}/assign", 5, user -> user.heldBooks.size() == user.freeBooks.size()
+                ? null
+                : post("/books/" + user.nextFreeBook() + "/assign", form("id", String.valueOf(user.pick(personIds)))));
+        route("POST /books/{id}/release", 5, user -> user.heldBooks.isEmpty()
+                ? null
+                : post("/books/" + user.heldBooks.pop() + "/release", ""));
+        route("POST /books/checkout", 1, user -> user.freeBooks.isEmpty()
+                ? null
+                : json("/books/checkout", user.bulkLoan(true)));
+        route("POST /books/return", 1, user -> user.bulkBooks.isEmpty()
+                ? null
+                : json("/books/return", user.bulkLoan(false)));
+        route("GET /people", 4, user -> get("/people?text=" + encode("Reader " + user.random.nextInt(100)) + "&page=0"));
+        route("GET /people/lookup", 6, user -> get("/people/lookup?text=" + encode("Reader " + user.random.nextInt(1000))));
+        route("GET /people/{id}", 8, user -> get("/people/" + user.pick(personIds)));
+        route("GET /people/{id}/edit", 1, user -> get("/people/" + user.pick(personIds) + "/edit"));
+        route("POST /people/add", 1, user -> post("/people/add",
+                form("fullName", "Load reader " + user.index + " " + user.sequence++, "yearOfBirth", "1990")));
+        route("POST /people/{id}/delete", 1, user -> user.createdPeople.isEmpty()
+                ? null
+                : post("/people/" + user.createdPeople.pop() + "/delete", ""));
+    }
+
+    @AfterAll
+    void cleanUp() {
+        jdbcTemplate.update("delete from book");
+        jdbcTemplate.update("delete from person");
+    }
+
+    @Test
+    void mixedTraffic() throws Exception {
+        List<User> users = new ArrayList<>(CONCURRENCY);
+        for (int i = 0; i < CONCURRENCY; i++) {
+            users.add(new User(i));
+        }
+        run(users, WARMUP_SECONDS, new Recorder());
+        Recorder recorder = new Recorder();
+        long elapsed = run(users, DURATION_SECONDS, recorder);
+
+        Map<String, Map<String, Object>> report = recorder.report(elapsed);
+        printReport(report, elapsed);
+        Files.createDirectories(REPORT.getParent());
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(REPORT.toFile(), report);
+        gate(report);
+    }
+
+    private long run(List<User> users, int seconds, Recorder recorder) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(users.size());
+        long start = System.nanoTime();
+        long deadline = start + Duration.ofSeconds(seconds).toNanos();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (User user : users) {
+                futures.add(executor.submit(() -> {
+                    while (System.nanoTime() < deadline) {
+                        user.step(recorder);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private void gate(Map<String, Map<String, Object>> report) throws IOException {
+        List<String> failures = new ArrayList<>();
+        Map<?, ?> baseline = GATE_BASELINE.isEmpty() ? Map.of() : objectMapper.readValue(Path.of(GATE_BASELINE).toFile(), Map.class);
+        report.forEach((route, stats) -> {
+            long errors = (long) stats.get("errors");
+            double p95 = (double) stats.get("p95_ms");
+            if (errors > 0) {
+                failures.add(route + ": " + errors + " failed requests");
+            }
+            if (GATE_P95_MILLIS > 0 && p95 > GATE_P95_MILLIS) {
+                failures.add(route + ": p95 " + p95 + " ms exceeds " + GATE_P95_MILLIS + " ms");
+            }
+            if (baseline.get(route) instanceof Map) {
+                double limit = ((Number) ((Map<?, ?>) baseline.get(route)).get("p95_ms")).doubleValue() * (1 + GATE_TOLERANCE);
+                if (p95 > limit) {
+                    failures.add(route + ": p95 " + p95 + " ms exceeds baseline limit " + String.format("%.2f", limit) + " ms");
+                }
+            }
+        });
+        assertTrue(failures.isEmpty(), String.join("\n", failures));
+    }
+
+    private static void printReport(Map<String, Map<String, Object>> report, long elapsed) {
+        System.out.printf("%n%d books, %d concurrent users, %d s%n", BOOKS, CONCURRENCY, Duration.ofNanos(elapsed).toSeconds());
+        System.out.printf("%-28s %8s %7s %9s %9s %9s %9s%n", "route", "requests", "errors", "req/s", "p50, ms", "p95, ms", "p99, ms");
+        report.forEach((route, stats) -> System.out.printf("%-28s %8d %7d %9.1f %9.2f %9.2f %9.2f%n", route,
+                stats.get("requests"), stats.get("errors"), stats.get("throughput"),
+                stats.get("p50_ms"), stats.get("p95_ms"), stats.get("p99_ms")));
+    }
+
+    private void route(String name, int weight, RequestFactory factory) {
+        routes.add(new Route(name, weight, factory));
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + path)).timeout(Duration.ofSeconds(30));
+    }
+
+    private HttpRequest get(String path) {
+        return request(path).GET().build();
+    }
+
+    private HttpRequest post(String path, String form) {
+        return request(path).header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form)).build();
+    }
+
+    private HttpRequest json(String path, Object body) {
+        try {
+            return request(path).header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(body))).build();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String form(String... pairs) {
+        StringBuilder form = new StringBuilder();
+        for (int i = 0; i < pairs.length; i += 2) {
+            if (i > 0) {
+                form.append('&');
+            }
+            form.append(pairs[i]).append('=').append(encode(pairs[i + 1]));
+        }
+        return form.toString();
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private interface RequestFactory {
+        HttpRequest create(User user);
+    }
+
+    private static class Route {
+        private final String name;
+        private final int weight;
+        private final RequestFactory factory;
+
+        Route(String name, int weight, RequestFactory factory) {
+            this.name = name;
+            this.weight = weight;
+            this.factory = factory;
+        }
+    }
+
+    private static class Recorder {
+        private final Map<String, ConcurrentLinkedQueue<Long>> latencies = new ConcurrentHashMap<>();
+        private final Map<String, AtomicLong> errors = new ConcurrentHashMap<>();
+
+        void record(String route, long nanos, boolean failed) {
+            latencies.computeIfAbsent(route, key -> new ConcurrentLinkedQueue<>()).add(nanos);
+            AtomicLong count = errors.computeIfAbsent(route, key -> new AtomicLong());
+            if (failed) {
+                count.incrementAndGet();
+            }
+        }
+
+        Map<String, Map<String, Object>> report(long elapsed) {
+            double seconds = elapsed / 1_000_000_000.0;
+            Map<String, Map<String, Object>> report = new LinkedHashMap<>();
+            latencies.keySet().stream().sorted().forEach(route -> {
+                long[] sorted = latencies.get(route).stream().mapToLong(Long::longValue).toArray();
+                Arrays.sort(sorted);
+                Map<String, Object> stats = new LinkedHashMap<>();
+                stats.put("requests", (long) sorted.length);
+                stats.put("errors", errors.get(route).get());
+                stats.put("throughput", sorted.length / seconds);
+                stats.put("p50_ms", percentile(sorted, 0.50));
+                stats.put("p95_ms", percentile(sorted, 0.95));
+                stats.put("p99_ms", percentile(sorted, 0.99));
+                report.put(route, stats);
+            });
+            return report;
+        }
+
+        private static double percentile(long[] sorted, double quantile) {
+            int index = (int) Math.ceil(quantile * sorted.length) - 1;
+            return sorted[Math.max(index, 0)] / 1_000_000.0;
+        }
+    }
+
+    private class User {
+        private final int index;
+        private final Random random;
+        private final int totalWeight;
+        private final List<Integer> freeBooks = new ArrayList<>();
+        private final Deque<Integer> heldBooks = new ArrayDeque<>();
+        private final List<Integer> bulkBooks = new ArrayList<>();
+        private final Deque<Integer> createdBooks = new ArrayDeque<>();
+        private final Deque<Integer> createdPeople = new ArrayDeque<>();
+        private int nextFree;
+        private int sequence;
+
+        User(int index) {
+            this.index = index;
+            this.random = new Random(index);
+            this.totalWeight = routes.stream().mapToInt(route -> route.weight).sum();
+            for (int i = index; i < freeBookIds.size(); i += CONCURRENCY) {
+                freeBooks.add(freeBookIds.get(i));
+            }
+        }
+
+        void step(Recorder recorder) throws IOException, InterruptedException {
+            Route route = choose();
+            HttpRequest request = route.factory.create(this);
+            if (Objects.isNull(request)) {
+                return;
+            }
+            long start = System.nanoTime();
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            long nanos = System.nanoTime() - start;
+            boolean failed = response.statusCode() >= 400;
+            recorder.record(route.name, nanos, failed);
+            if (!failed) {
+                afterSuccess(route.name, request, response);
+            }
+        }
+
+        private void afterSuccess(String route, HttpRequest request, HttpResponse<String> response) {
+            String location = response.headers().firstValue("Location").orElse("");
+            if (route.equals("POST /books/add")) {
+                createdBooks.push(Integer.parseInt(location.substring(location.lastIndexOf('/') + 1)));
+            } else if (route.equals("POST /people/add") && location.matches(".*/people/\\d+")) {
+                createdPeople.push(Integer.parseInt(location.substring(location.lastIndexOf('/') + 1)));
+            } else if (route.equals("POST /books/{id}/assign")) {
+                String path = request.uri().getPath();
+                heldBooks.push(Integer.parseInt(path.split("/")[2]));
+            }
+        }
+
+        private Route choose() {
+            int ticket = random.nextInt(totalWeight);
+            for (Route route : routes) {
+                ticket -= route.weight;
+                if (ticket < 0) {
+                    return route;
+                }
+            }
+            return routes.get(routes.size() - 1);
+        }
+
+        int nextFreeBook() {
+            int bookId;
+            do {
+                bookId = freeBooks.get(nextFree++ % freeBooks.size());
+            } while (heldBooks.contains(bookId) || bulkBooks.contains(bookId));
+            return bookId;
+        }
+
+        Map<String, Object> bulkLoan(boolean checkout) {
+            List<Integer> books = new ArrayList<>();
+            if (checkout) {
+                for (int i = 0; i < 3 && heldBooks.size() + bulkBooks.size() + books.size() < freeBooks.size(); i++) {
+                    int bookId = nextFreeBook();
+                    if (!books.contains(bookId)) {
+                        books.add(bookId);
+                    }
+                }
+                bulkBooks.addAll(books);
+            } else {
+                books.addAll(bulkBooks);
+                bulkBooks.clear();
+            }
+            return Map.of("personId", personIds.get(index % personIds.size()), "bookIds", books);
+        }
+
+        <T> T pick(List<T> values) {
+            return values.get(random.nextInt(values.size()));
+        }
+
+        <T> T pick(T[] values) {
+            return values[random.nextInt(values.length)];
+        }
+    }
+}
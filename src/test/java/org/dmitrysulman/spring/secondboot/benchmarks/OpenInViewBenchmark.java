@@ -0,0 +1,122 @@
+package org.dmitrysulman.spring.secondboot.benchmarks;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.dmitrysulman.spring.secondboot.SecondBootApplication;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@Tag("benchmark")
+class OpenInViewBenchmark {
+
+    private static final int BOOKS = Integer.getInteger("benchmark.books", 20_000);
+    private static final int CONCURRENCY = Integer.getInteger("benchmark.concurrency", 32);
+    private static final int POOL_SIZE = Integer.getInteger("benchmark.pool-size", 4);
+    private static final int WARMUP_SECONDS = Integer.getInteger("benchmark.warmup-seconds", 5);
+    private static final int DURATION_SECONDS = Integer.getInteger("benchmark.duration-seconds", 15);
+    private static final String[] SEARCH_TERMS = {"river", "silent garden", "winter", "glass", "ocean"};
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @ParameterizedTest(name = "open-in-view={0}")
+    @ValueSource(booleans = {true, false})
+    void poolWaitAndThroughput(boolean openInView) throws Exception {
+        try (ServletWebServerApplicationContext context = (ServletWebServerApplicationContext)
+                new SpringApplicationBuilder(SecondBootApplication.class).run(
+                        "--server.port=0",
+                        "--spring.jpa.open-in-view=" + openInView,
+                        "--spring.datasource.url=jdbc:h2:mem:osiv_" + openInView + ";MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=YEAR",
+                        "--spring.datasource.hikari.maximum-pool-size=" + POOL_SIZE,
+                        "--library.typeahead.snapshot-file=",
+                        "--logging.level.root=WARN")) {
+            JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+            new CatalogGenerator(jdbcTemplate, 42).generate(BOOKS);
+            List<Integer> bookIds = jdbcTemplate.queryForList("select id from book order by id", Integer.class);
+            List<Integer> personIds = jdbcTemplate.queryForList("select id from person order by id", Integer.class);
+            String base = "http://localhost:" + context.getWebServer().getPort();
+
+            run(base, bookIds, personIds, WARMUP_SECONDS);
+            MeterRegistry registry = context.getBean(MeterRegistry.class);
+            Timer acquire = registry.get("hikaricp.connections.acquire").timer();
+            Timer usage = registry.get("hikaricp.connections.usage").timer();
+            long acquireCount = acquire.count();
+            double acquireTime = acquire.totalTime(TimeUnit.MILLISECONDS);
+            long usageCount = usage.count();
+            double usageTime = usage.totalTime(TimeUnit.MILLISECONDS);
+
+            long[] outcome = run(base, bookIds, personIds, DURATION_SECONDS);
+            assertEquals(0, outcome[1], "failed requests");
+
+            System.out.printf("%nopen-in-view=%b, %d books, %d users, pool of %d%n", openInView, BOOKS, CONCURRENCY, POOL_SIZE);
+            System.out.printf("%-28s %10.1f%n", "requests/s", outcome[0] / (double) DURATION_SECONDS);
+            System.out.printf("%-28s %10.3f%n", "mean pool wait, ms",
+                    (acquire.totalTime(TimeUnit.MILLISECONDS) - acquireTime) / Math.max(acquire.count() - acquireCount, 1));
+            System.out.printf("%-28s %10.3f%n", "mean connection hold, ms",
+                    (usage.totalTime(TimeUnit.MILLISECONDS) - usageTime) / Math.max(usage.count() - usageCount, 1));
+        }
+    }
+
+    private long[] run(String base, List<Integer> bookIds, List<Integer> personIds, int seconds) throws Exception {
+        AtomicLong requests = new AtomicLong();
+        AtomicLong failures = new AtomicLong();
+        long deadline = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+        ExecutorService executor = Executors.newFixedThreadPool(CONCURRENCY);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < CONCURRENCY; i++) {
+                Random random = new Random(i);
+                futures.add(executor.submit(() -> {
+                    while (System.nanoTime() < deadline) {
+                        String path;
+                        switch (random.nextInt(4)) {
+                            case 0:
+                                path = "/books/" + bookIds.get(random.nextInt(bookIds.size()));
+                                break;
+                            case 1:
+                                path = "/people/" + personIds.get(random.nextInt(personIds.size()));
+                                break;
+                            case 2:
+                                path = "/books/search?text=" + SEARCH_TERMS[random.nextInt(SEARCH_TERMS.length)].replace(" ", "+");
+                                break;
+                            default:
+                                path = "/books?page=" + random.nextInt(BOOKS / 20) + "&books_per_page=20";
+                        }
+                        HttpResponse<Void> response = client.send(HttpRequest.newBuilder(URI.create(base + path)).build(),
+                                HttpResponse.BodyHandlers.discarding());
+                        requests.incrementAndGet();
+                        if (response.statusCode() >= 400) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return new long[]{requests.get(), failures.get()};
+    }
+}
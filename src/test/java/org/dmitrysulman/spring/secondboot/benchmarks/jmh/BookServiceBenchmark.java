@@ -0,0 +1,66 @@
+package org.dmitrysulman.spring.secondboot.benchmarks.jmh;
+
+import org.dmitrysulman.spring.secondboot.dto.BookListing;
+import org.dmitrysulman.spring.secondboot.dto.BookSummary;
+import org.dmitrysulman.spring.secondboot.services.BookService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Slice;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookServiceBenchmark {
+
+    private static final int BOOKS_PER_PAGE = 20;
+    private static final int PAGE = 50;
+
+    private BookService bookService;
+    private int next;
+
+    @Setup
+    public void setUp(CatalogState catalog) {
+        bookService = catalog.getBean(BookService.class);
+    }
+
+    @Benchmark
+    public Slice<BookSummary> findAllPaged() {
+        return bookService.findAll(PAGE, BOOKS_PER_PAGE, false);
+    }
+
+    @Benchmark
+    public Slice<BookSummary> findAllSortedByYear() {
+        return bookService.findAll(PAGE, BOOKS_PER_PAGE, true);
+    }
+
+    @Benchmark
+    public List<BookListing> findByTitleStartingWith(CatalogState catalog) {
+        return bookService.findByTitleStartingWith(pick(catalog.titlePrefixes), BOOKS_PER_PAGE);
+    }
+
+    @Benchmark
+    public Boolean assignAndRelease(CatalogState catalog) {
+        int bookId = pick(catalog.freeBookIds);
+        bookService.assign(bookId, catalog.personIds.get(next % catalog.personIds.size()));
+        return bookService.release(bookId);
+    }
+
+    private <T> T pick(List<T> samples) {
+        next++;
+        return samples.get(next % samples.size());
+    }
+}
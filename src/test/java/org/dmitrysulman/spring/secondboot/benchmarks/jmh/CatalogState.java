@@ -0,0 +1,61 @@
+package org.dmitrysulman.spring.secondboot.benchmarks.jmh;
+
+import org.dmitrysulman.spring.secondboot.SecondBootApplication;
+import org.dmitrysulman.spring.secondboot.benchmarks.CatalogGenerator;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+@State(Scope.Benchmark)
+public class CatalogState {
+
+    private static final int SAMPLES = 1_000;
+
+    @Param({"10000", "1000000", "10000000"})
+    public int rows;
+
+    ConfigurableApplicationContext context;
+    List<Integer> personIds;
+    List<Integer> freeBookIds;
+    List<String> fullNames;
+    List<String> titlePrefixes;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = new SpringApplicationBuilder(SecondBootApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:jmh;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=YEAR;DB_CLOSE_DELAY=-1",
+                        "--spring.jpa.properties.hibernate.generate_statistics=false",
+                        "--library.typeahead.snapshot-file=",
+                        "--logging.level.root=WARN");
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        new CatalogGenerator(jdbcTemplate, 42).generate(rows);
+
+        personIds = jdbcTemplate.queryForList(
+                "select id from person order by id limit ?", Integer.class, SAMPLES);
+        freeBookIds = jdbcTemplate.queryForList(
+                "select id from book where person_id is null order by id limit ?", Integer.class, SAMPLES);
+        fullNames = jdbcTemplate.queryForList(
+                "select full_name from person order by id desc limit ?", String.class, SAMPLES);
+        titlePrefixes = jdbcTemplate.queryForList(
+                "select substring(title, 1, 8) from book order by id limit ?", String.class, SAMPLES);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+}
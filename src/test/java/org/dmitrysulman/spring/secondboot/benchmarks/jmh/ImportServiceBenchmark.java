@@ -0,0 +1,86 @@
+package org.dmitrysulman.spring.secondboot.benchmarks.jmh;
+
+import org.dmitrysulman.spring.secondboot.dto.ImportProgress;
+import org.dmitrysulman.spring.secondboot.services.ImportService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// Scores are imported rows per second; the import is meant to reach at least 50k of them
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImportServiceBenchmark {
+
+    private static final int ROWS = 50_000;
+
+    private static final ImportService.Listener IGNORE = new ImportService.Listener() {
+        @Override
+        public void onRejected(long record, String message) {
+        }
+
+        @Override
+        public void onProgress(ImportProgress progress) {
+        }
+    };
+
+    private ImportService importService;
+    private byte[] books;
+
+    @Setup
+    public void setUp(CatalogState catalog) {
+        importService = catalog.getBean(ImportService.class);
+        StringBuilder csv = new StringBuilder("title,author,year\n");
+        for (int i = 0; i < ROWS; i++) {
+            csv.append("Imported title ").append(i).append(",Imported author ").append(i % 1000).append(',')
+                    .append(1900 + i % 120).append('\n');
+        }
+        books = csv.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public ImportProgress importBooks() {
+        return importService.importBooks(new ByteArrayInputStream(books), ImportService.Format.CSV, IGNORE);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public ImportProgress importPeople(PeopleCsv csv) {
+        return importService.importPeople(new ByteArrayInputStream(csv.people), ImportService.Format.CSV, IGNORE);
+    }
+
+    // Names are unique, so every invocation imports a fresh set of readers
+    @State(Scope.Thread)
+    public static class PeopleCsv {
+        private byte[] people;
+        private int run;
+
+        @Setup(Level.Invocation)
+        public void next() {
+            run++;
+            StringBuilder csv = new StringBuilder("full_name,year_of_birth\n");
+            for (int i = 0; i < ROWS; i++) {
+                csv.append("Imported reader ").append(run).append('-').append(i).append(',')
+                        .append(1940 + i % 60).append('\n');
+            }
+            people = csv.toString().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package org.dmitrysulman.spring.secondboot.benchmarks.jmh;
+
+import org.dmitrysulman.spring.secondboot.dto.LoanedBook;
+import org.dmitrysulman.spring.secondboot.models.Person;
+import org.dmitrysulman.spring.secondboot.services.PersonService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Slice;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersonServiceBenchmark {
+
+    private static final int BOOKS_PER_PAGE = 20;
+
+    private PersonService personService;
+    private int next;
+
+    @Setup
+    public void setUp(CatalogState catalog) {
+        personService = catalog.getBean(PersonService.class);
+    }
+
+    @Benchmark
+    public List<Person> findAll() {
+        return personService.findAll();
+    }
+
+    @Benchmark
+    public Slice<LoanedBook> getBooksOfPersonById(CatalogState catalog) {
+        return personService.getBooksOfPersonById(pick(catalog.personIds), 0, BOOKS_PER_PAGE);
+    }
+
+    @Benchmark
+    public Optional<Person> findByFullName(CatalogState catalog) {
+        return personService.findByFullName(pick(catalog.fullNames));
+    }
+
+    private <T> T pick(List<T> samples) {
+        next++;
+        return samples.get(next % samples.size());
+    }
+}
@@ -0,0 +1,50 @@
+package org.dmitrysulman.spring.secondboot.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class MetricsTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void recordsQueriesPerRequestAndServiceTimings() throws Exception {
+        mockMvc.perform(get("/books?page=0&books_per_page=5")).andExpect(status().isOk());
+
+        DistributionSummary queries = meterRegistry.find(QueryCountInterceptor.METRIC_NAME)
+                .tag("method", "GET")
+                .tag("uri", "/books")
+                .summary();
+        assertNotNull(queries);
+        assertTrue(queries.count() >= 1);
+        assertTrue(queries.totalAmount() >= 1);
+
+        assertNotNull(meterRegistry.find("library.service")
+                .tag("class", "org.dmitrysulman.spring.secondboot.services.BookService")
+                .tag("method", "findAll")
+                .timer());
+    }
+
+    @Test
+    void exposesHibernateAndConnectionPoolMetrics() {
+        assertNotNull(meterRegistry.find("hibernate.statements").functionCounter());
+        assertNotNull(meterRegistry.find("hibernate.second.level.cache.requests").functionCounter());
+        assertNotNull(meterRegistry.find("hikaricp.connections.active").gauge());
+    }
+}
@@ -0,0 +1,110 @@
+package org.dmitrysulman.spring.secondboot.config;
+
+import org.dmitrysulman.spring.secondboot.dto.BookSummary;
+import org.dmitrysulman.spring.secondboot.models.Book;
+import org.dmitrysulman.spring.secondboot.models.Person;
+import org.dmitrysulman.spring.secondboot.services.BookService;
+import org.dmitrysulman.spring.secondboot.services.PersonService;
+import org.dmitrysulman.spring.secondboot.util.BookCursor;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class PageCacheFilterTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private PersonService personService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    void servesRepeatedPagesWithoutQueries() throws Exception {
+        int book = bookService.save(new Book(0, "Cached title", "Cached author", 2000));
+        MvcResult first = mockMvc.perform(get("/books/" + book))
+                .andExpect(status().isOk())
+                .andExpect(header().string(PageCacheFilter.CACHE_HEADER, "MISS"))
+                .andReturn();
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        mockMvc.perform(get("/books/" + book))
+                .andExpect(status().isOk())
+                .andExpect(header().string(PageCacheFilter.CACHE_HEADER, "HIT"))
+                .andExpect(content().contentType(first.getResponse().getContentType()))
+                .andExpect(content().bytes(first.getResponse().getContentAsByteArray()));
+
+        assertEquals(0, statistics.getPrepareStatementCount());
+        bookService.delete(book);
+    }
+
+    @Test
+    void absentAndEmptyParametersAreDifferentPages() throws Exception {
+        List<Integer> books = new ArrayList<>();
+        for (int i = 0; i < 11; i++) {
+            books.add(bookService.save(new Book(0, "Paged title " + i, "Paged author", 2000)));
+        }
+        String offset = mockMvc.perform(get("/books"))
+                .andExpect(header().string(PageCacheFilter.CACHE_HEADER, "MISS"))
+                .andReturn().getResponse().getContentAsString();
+        String keyset = mockMvc.perform(get("/books").param("cursor", ""))
+                .andExpect(header().string(PageCacheFilter.CACHE_HEADER, "MISS"))
+                .andExpect(content().string(containsString("Next")))
+                .andReturn().getResponse().getContentAsString();
+
+        assertNotEquals(offset, keyset);
+        books.forEach(bookService::delete);
+    }
+
+    @Test
+    void writesInvalidateDependentPages() throws Exception {
+        int person = personService.save(new Person(0, "Cached owner", 1990));
+        int book = bookService.save(new Book(0, "Cached loan", "Cached author", 2000));
+        bookService.assign(book, person);
+        // The last page in id order, which holds the newest book
+        String index = "/books?books_per_page=10&cursor="
+                + BookCursor.before(new BookSummary(Integer.MAX_VALUE, "", "", 0), false).encode();
+        mockMvc.perform(get("/books/" + book)).andExpect(content().string(containsString("Cached owner")));
+        mockMvc.perform(get(index)).andExpect(content().string(containsString("Cached loan")));
+
+        personService.update(person, new Person(0, "Renamed owner", 1990));
+        bookService.update(book, new Book(0, "Renamed loan", "Cached author", 2000));
+
+        mockMvc.perform(get("/books/" + book))
+                .andExpect(header().string(PageCacheFilter.CACHE_HEADER, "MISS"))
+                .andExpect(content().string(containsString("Renamed owner")));
+        mockMvc.perform(get(index))
+                .andExpect(header().string(PageCacheFilter.CACHE_HEADER, "MISS"))
+                .andExpect(content().string(containsString("Renamed loan")));
+
+        bookService.release(book);
+        mockMvc.perform(get("/books/" + book)).andExpect(content().string(containsString("The books is free")));
+        bookService.delete(book);
+        personService.delete(person);
+    }
+}
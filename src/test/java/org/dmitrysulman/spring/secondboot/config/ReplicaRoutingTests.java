@@ -0,0 +1,117 @@
+package org.dmitrysulman.spring.secondboot.config;
+
+import org.dmitrysulman.spring.secondboot.models.Book;
+import org.dmitrysulman.spring.secondboot.services.BookService;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.persistence.EntityManagerFactory;
+import javax.servlet.http.Cookie;
+import javax.sql.DataSource;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.List;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=" + ReplicaRoutingTests.PRIMARY_URL,
+        "library.replicas.urls=" + ReplicaRoutingTests.REPLICA_URL + ",jdbc:h2:tcp://127.0.0.1:9/unreachable",
+        "library.replicas.connection-timeout-ms=250"
+})
+@AutoConfigureMockMvc
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ReplicaRoutingTests {
+
+    static final String PRIMARY_URL = "jdbc:h2:mem:routing-primary;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=YEAR;DB_CLOSE_DELAY=-1";
+    static final String REPLICA_URL = "jdbc:h2:mem:routing-replica;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=YEAR;DB_CLOSE_DELAY=-1";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private final JdbcTemplate replica = new JdbcTemplate(new DriverManagerDataSource(REPLICA_URL, "sa", ""));
+
+    @BeforeAll
+    void copySchemaToReplica() throws Exception {
+        Path script = Files.createTempFile("replica-schema", ".sql");
+        jdbcTemplate.execute("script nodata to '" + script + "'");
+        replica.execute("runscript from '" + script + "'");
+        Files.delete(script);
+        dataSource.unwrap(ReplicaRoutingDataSource.class).checkHealth();
+    }
+
+    @Test
+    void readOnlyTransactionsSkipUnhealthyReplicas() {
+        replica.update("insert into book (id, title, author, year) values (1000001, 'Replica only', 'Nobody', 2000)");
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(bookService.findView(1000001).isPresent());
+        }
+        assertEquals(0, jdbcTemplate.queryForObject("select count(*) from book where id = 1000001", Integer.class));
+    }
+
+    @Test
+    void writesPinTheClientToThePrimary() throws Exception {
+        Cookie pin = mockMvc.perform(post("/books/add").param("title", "Primary only").param("author", "Somebody")
+                        .param("year", "2001"))
+                .andExpect(status().is3xxRedirection())
+                .andReturn().getResponse().getCookie(PrimaryPinningFilter.COOKIE_NAME);
+        int id = jdbcTemplate.queryForObject("select id from book where title = 'Primary only'", Integer.class);
+
+        mockMvc.perform(get("/api/books/" + id).cookie(pin)).andExpect(status().isOk());
+        mockMvc.perform(get("/api/books/" + id)).andExpect(status().isNotFound());
+    }
+
+    @Test
+    void laggingReplicaReadsAreNotCached() throws Exception {
+        int id = bookService.save(new Book(0, "Fresh title", "Somebody", 2002));
+        replica.update("insert into book (id, title, author, year) values (?, 'Stale title', 'Somebody', 2002)", id);
+
+        assertEquals("Stale title", bookService.findOne(id).orElseThrow().getTitle());
+        assertFalse(entityManagerFactory.getCache().contains(Book.class, id));
+
+        for (String cacheStatus : List.of("MISS", "HIT")) {
+            mockMvc.perform(get("/books/" + id))
+                    .andExpect(header().string(PageCacheFilter.CACHE_HEADER, cacheStatus))
+                    .andExpect(content().string(containsString("Fresh title")));
+        }
+        assertEquals("Fresh title", bookService.findOne(id).orElseThrow().getTitle());
+    }
+
+    @Test
+    void credentialedConnectionsAreLeftToTheSelectedPool() throws Exception {
+        DataSource router = dataSource.unwrap(ReplicaRoutingDataSource.class).getTargetDataSource();
+
+        // Hikari pools only hand out connections for their configured user, and say so with an SQLException
+        assertThrows(SQLFeatureNotSupportedException.class, () -> router.getConnection("sa", ""));
+    }
+}
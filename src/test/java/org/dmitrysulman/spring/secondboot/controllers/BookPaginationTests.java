@@ -0,0 +1,145 @@
+package org.dmitrysulman.spring.secondboot.controllers;
+
+import org.dmitrysulman.spring.secondboot.dto.BookSummary;
+import org.dmitrysulman.spring.secondboot.models.Book;
+import org.dmitrysulman.spring.secondboot.services.BookService;
+import org.dmitrysulman.spring.secondboot.util.BookCursor;
+import org.dmitrysulman.spring.secondboot.util.KeysetPage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "library.page-cache.enabled=false")
+@AutoConfigureMockMvc
+class BookPaginationTests {
+
+    private static final int BOOKS_PER_PAGE = 2;
+    // Later than any other book, so these books are the tail of the catalog in both orders
+    private static final int[] YEARS = {9001, 9000, 9000, 9000, 9001};
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private BookService bookService;
+
+    private final List<Integer> ids = new ArrayList<>();
+
+    @BeforeEach
+    void populate() {
+        for (int i = 0; i < YEARS.length; i++) {
+            ids.add(bookService.save(new Book(0, "Paged book " + i, "Paged author", YEARS[i])));
+        }
+    }
+
+    @AfterEach
+    void cleanUp() {
+        ids.forEach(bookService::delete);
+    }
+
+    @Test
+    void walksTheIdOrderBothWays() {
+        BookCursor start = BookCursor.after(new BookSummary(ids.get(0) - 1, "", "", 0), false);
+
+        assertWalk(start, List.of(
+                List.of(ids.get(0), ids.get(1)), List.of(ids.get(2), ids.get(3)), List.of(ids.get(4))));
+    }
+
+    @Test
+    void walksTheYearOrderBothWaysBreakingTiesById() {
+        BookCursor start = BookCursor.after(new BookSummary(Integer.MAX_VALUE, "", "", 8999), true);
+
+        // The boundary between the first two pages falls inside the books of 9000
+        assertWalk(start, List.of(
+                List.of(ids.get(1), ids.get(2)), List.of(ids.get(3), ids.get(0)), List.of(ids.get(4))));
+    }
+
+    @Test
+    void firstPageHasNoPrevious() {
+        for (boolean sortByYear : new boolean[]{false, true}) {
+            KeysetPage<BookSummary> first = bookService.findAll(BookCursor.first(sortByYear), BOOKS_PER_PAGE);
+
+            assertFalse(first.hasPrevious());
+            assertTrue(first.hasNext());
+        }
+    }
+
+    @Test
+    void rejectsBadCursors() throws Exception {
+        mockMvc.perform(get("/books").param("cursor", "not a cursor"))
+                .andExpect(status().isBadRequest());
+        // Three fields instead of four
+        mockMvc.perform(get("/books").param("cursor", "eDoxOjI"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"0", "-1", "101", "2147483647"})
+    void rejectsPageSizesOutOfBounds(String booksPerPage) throws Exception {
+        mockMvc.perform(get("/books").param("cursor", "").param("books_per_page", booksPerPage))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void pagerLinksKeepTheSortOrder() throws Exception {
+        mockMvc.perform(get("/books").param("page", "1").param("books_per_page", "2").param("sort_by_year", "true"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("/books?page=0&amp;books_per_page=2&amp;sort_by_year=true")))
+                .andExpect(content().string(containsString("/books?cursor=&amp;books_per_page=2&amp;sort_by_year=true")));
+        mockMvc.perform(get("/books").param("page", "1").param("books_per_page", "2"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("/books?page=0&amp;books_per_page=2&amp;sort_by_year=false")));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"page=-1", "books_per_page=0", "books_per_page=101", "books_per_page=100000000"})
+    void rejectsOffsetPagesOutOfBounds(String parameter) throws Exception {
+        mockMvc.perform(get("/books?" + parameter))
+                .andExpect(status().isBadRequest());
+    }
+
+    private void assertWalk(BookCursor start, List<List<Integer>> pages) {
+        List<KeysetPage<BookSummary>> forward = new ArrayList<>();
+        BookCursor cursor = start;
+        for (List<Integer> expected : pages) {
+            KeysetPage<BookSummary> page = bookService.findAll(cursor, BOOKS_PER_PAGE);
+            assertEquals(expected, ids(page));
+            forward.add(page);
+            if (page.hasNext()) {
+                cursor = BookCursor.decode(page.getNextCursor()).orElseThrow();
+            }
+        }
+        KeysetPage<BookSummary> last = forward.get(forward.size() - 1);
+        assertFalse(last.hasNext());
+        assertTrue(last.hasPrevious());
+
+        KeysetPage<BookSummary> page = last;
+        for (int i = pages.size() - 2; i >= 0; i--) {
+            page = bookService.findAll(BookCursor.decode(page.getPreviousCursor()).orElseThrow(), BOOKS_PER_PAGE);
+            assertEquals(pages.get(i), ids(page));
+            assertTrue(page.hasNext());
+        }
+    }
+
+    private static List<Integer> ids(KeysetPage<BookSummary> page) {
+        return page.getContent().stream().map(BookSummary::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,64 @@
+package org.dmitrysulman.spring.secondboot.controllers;
+
+import com.jayway.jsonpath.JsonPath;
+import org.dmitrysulman.spring.secondboot.models.Book;
+import org.dmitrysulman.spring.secondboot.services.BookService;
+import org.dmitrysulman.spring.secondboot.util.ChangeCursor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class ChangeFeedTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void reportsUpdatesAndDeletesInCommitOrder() throws Exception {
+        long changeXid = jdbcTemplate.queryForObject("select greatest(coalesce(max(b.change_xid), 0), " +
+                "coalesce((select max(t.change_xid) from book_tombstone t), 0)) from book b", Long.class);
+        String since = ChangeCursor.after(changeXid, Integer.MAX_VALUE).encode();
+        int kept = bookService.save(new Book(0, "Feed kept", "Feed author", 2000));
+        int deleted = bookService.save(new Book(0, "Feed deleted", "Feed author", 2000));
+        bookService.update(kept, new Book(0, "Feed kept again", "Feed author", 2001));
+        bookService.delete(deleted);
+
+        String next = page(since)
+                .andExpect(jsonPath("$.changes.length()").value(1))
+                .andExpect(jsonPath("$.changes[0].id").value(kept))
+                .andExpect(jsonPath("$.changes[0].title").value("Feed kept again"))
+                .andExpect(jsonPath("$.deleted.length()").value(0))
+                .andReturn().getResponse().getContentAsString();
+        next = page(JsonPath.read(next, "$.next"))
+                .andExpect(jsonPath("$.changes.length()").value(0))
+                .andExpect(jsonPath("$.deleted[0]").value(deleted))
+                .andReturn().getResponse().getContentAsString();
+        page(JsonPath.read(next, "$.next"))
+                .andExpect(jsonPath("$.changes.length()").value(0))
+                .andExpect(jsonPath("$.deleted.length()").value(0))
+                .andExpect(jsonPath("$.next").value(JsonPath.<String>read(next, "$.next")));
+
+        bookService.delete(kept);
+    }
+
+    private ResultActions page(String since) throws Exception {
+        return mockMvc.perform(get("/api/books/changes").param("since", since).param("limit", "1"))
+                .andExpect(status().isOk());
+    }
+}
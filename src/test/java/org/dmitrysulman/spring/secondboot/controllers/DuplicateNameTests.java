@@ -0,0 +1,121 @@
+package org.dmitrysulman.spring.secondboot.controllers;
+
+import org.dmitrysulman.spring.secondboot.models.Person;
+import org.dmitrysulman.spring.secondboot.services.ImportService;
+import org.dmitrysulman.spring.secondboot.services.PersonNameFilter;
+import org.dmitrysulman.spring.secondboot.services.PersonService;
+import org.dmitrysulman.spring.secondboot.util.PersonValidator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.model;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.view;
+
+// A small filter, so that an import outgrows it
+@SpringBootTest(properties = "library.person-name-filter.expected-names=4")
+@AutoConfigureMockMvc
+class DuplicateNameTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PersonNameFilter personNameFilter;
+
+    @SpyBean
+    private PersonService personService;
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("delete from person where full_name like 'Duplicate%'");
+    }
+
+    @Test
+    void addReportsTheConstraintAsAFieldError() throws Exception {
+        personService.save(new Person(0, "Duplicate taken", 1980));
+        // The name was free when validated, and taken by the time it is inserted
+        doReturn(false).when(personService).mightExist(anyString());
+
+        mockMvc.perform(post("/people/add").param("fullName", "Duplicate taken").param("yearOfBirth", "1990"))
+                .andExpect(status().isOk())
+                .andExpect(view().name("people/add"))
+                .andExpect(model().attributeHasFieldErrors("person", "fullName"))
+                .andExpect(content().string(containsString(PersonValidator.DUPLICATE_NAME)));
+
+        assertEquals(1, countNamed("Duplicate taken"));
+    }
+
+    @Test
+    void editReportsTheConstraintAsAFieldError() throws Exception {
+        personService.save(new Person(0, "Duplicate taken", 1980));
+        int id = personService.save(new Person(0, "Duplicate renamed", 1981));
+        doReturn(false).when(personService).mightExist(anyString());
+
+        mockMvc.perform(post("/people/" + id + "/edit").param("fullName", "Duplicate taken").param("yearOfBirth", "1981"))
+                .andExpect(status().isOk())
+                .andExpect(view().name("people/edit"))
+                .andExpect(model().attributeHasFieldErrors("person", "fullName"))
+                .andExpect(content().string(containsString(PersonValidator.DUPLICATE_NAME)));
+
+        assertEquals(1, countNamed("Duplicate renamed"));
+    }
+
+    @Test
+    void filterIsRebuiltWhenAnImportOutgrowsIt() throws Exception {
+        // Loaded now, so that the next save adds to it
+        personNameFilter.mightContain("Duplicate warm-up");
+        int gone = personService.save(new Person(0, "Duplicate gone", 1980));
+        personService.delete(gone);
+        // A filter never forgets a name, only a rebuild from the table does
+        assertTrue(personNameFilter.mightContain("Duplicate gone"));
+
+        Integer count = jdbcTemplate.queryForObject("select count(*) from person", Integer.class);
+        List<String> imported = new ArrayList<>();
+        for (int i = 0; i < Objects.requireNonNull(count) + 5; i++) {
+            imported.add("Duplicate imported " + i);
+        }
+        importPeople(imported);
+
+        imported.forEach(name -> assertTrue(personNameFilter.mightContain(name), name));
+        assertFalse(personNameFilter.mightContain("Duplicate gone"));
+
+        // Fits into the rebuilt filter, so it is added in place
+        importPeople(List.of("Duplicate late"));
+
+        assertTrue(personNameFilter.mightContain("Duplicate late"));
+    }
+
+    private void importPeople(List<String> names) throws Exception {
+        StringBuilder csv = new StringBuilder("full_name,year_of_birth\n");
+        names.forEach(name -> csv.append(name).append(",1990\n"));
+        mockMvc.perform(post("/people/import").contentType(ImportService.TEXT_CSV).content(csv.toString()))
+                .andExpect(status().isOk());
+    }
+
+    private int countNamed(String fullName) {
+        return Objects.requireNonNull(jdbcTemplate.queryForObject(
+                "select count(*) from person where full_name = ?", Integer.class, fullName));
+    }
+}
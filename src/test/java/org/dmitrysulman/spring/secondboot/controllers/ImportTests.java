@@ -0,0 +1,179 @@
+package org.dmitrysulman.spring.secondboot.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dmitrysulman.spring.secondboot.events.BulkImportEvent;
+import org.dmitrysulman.spring.secondboot.models.Book;
+import org.dmitrysulman.spring.secondboot.models.Person;
+import org.dmitrysulman.spring.secondboot.services.ImportService;
+import org.dmitrysulman.spring.secondboot.services.PersonService;
+import org.dmitrysulman.spring.secondboot.util.PersonValidator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.event.ApplicationEvents;
+import org.springframework.test.context.event.RecordApplicationEvents;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "library.import.batch-size=2")
+@AutoConfigureMockMvc
+@RecordApplicationEvents
+class ImportTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private PersonService personService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ApplicationEvents applicationEvents;
+
+    @SpyBean
+    private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("delete from book where author like 'Import%'");
+        jdbcTemplate.update("delete from person where full_name like 'Import%'");
+    }
+
+    @Test
+    void parsesCsvAndRejectsBadRows() throws Exception {
+        String csv = "title,author,year\n" +
+                "\"Quoted, title\",\"Imported \"\"Q\"\"\",2001\n" +
+                "Short author,x,2002\n" +
+                "\n" +
+                "Extra column,Imported author,2003,oops\n" +
+                "Bad year,Imported author,soon\n" +
+                "\"Multi\nline title\",Imported author,2004\n";
+
+        List<Map<String, Object>> lines = importFile("/books/import", ImportService.TEXT_CSV, csv);
+
+        assertEquals(List.of(2, 3, 4), rejectedRecords(lines));
+        assertEquals("author: Author should be between 3 and 400", lines.get(0).get("message"));
+        assertEquals("Expected 3 columns but found 4", lines.get(1).get("message"));
+        assertEquals("year: should be a number", lines.get(2).get("message"));
+        assertEquals(Map.of("type", "progress", "processed", 5, "imported", 2, "rejected", 3), lines.get(lines.size() - 1));
+        assertEquals("Imported \"Q\"", jdbcTemplate.queryForObject(
+                "select author from book where title = 'Quoted, title'", String.class));
+        assertEquals(1, jdbcTemplate.queryForObject(
+                "select count(*) from book where title = 'Multi\nline title'", Integer.class));
+    }
+
+    @Test
+    void importsNdjsonInBatchesAndRejectsDuplicates() throws Exception {
+        personService.save(new Person(0, "Imported existing", 1980));
+        String ndjson = "{\"full_name\": \"Imported A\", \"year_of_birth\": 1990}\n" +
+                "{\"full_name\": \"Imported B\", \"year_of_birth\": 1991}\n" +
+                "{\"full_name\": \"Imported A\", \"year_of_birth\": 1992}\n" +
+                "not json\n" +
+                "{\"full_name\": \"Imported C\", \"year_of_birth\": \"soon\"}\n" +
+                "{\"full_name\": \"Imported existing\", \"year_of_birth\": 1980}\n" +
+                "{\"full_name\": \"Imported D\", \"year_of_birth\": 1993}\n";
+
+        List<Map<String, Object>> lines = importFile("/people/import", ImportService.APPLICATION_NDJSON, ndjson);
+
+        assertEquals(List.of(4, 5, 3, 6), rejectedRecords(lines));
+        assertEquals(List.of(
+                Map.of("type", "progress", "processed", 2, "imported", 2, "rejected", 0),
+                Map.of("type", "progress", "processed", 6, "imported", 2, "rejected", 4),
+                Map.of("type", "progress", "processed", 7, "imported", 3, "rejected", 4)
+        ), lines.stream().filter(line -> line.get("type").equals("progress")).collect(Collectors.toList()));
+        assertEquals(4, jdbcTemplate.queryForObject(
+                "select count(*) from person where full_name like 'Imported%'", Integer.class));
+    }
+
+    @Test
+    void rejectsNamesTakenBetweenLookupAndInsert() throws Exception {
+        personService.save(new Person(0, "Imported raced", 1980));
+        // The duplicate lookup misses the name, as if another import inserted it concurrently
+        doReturn(List.of()).doReturn(List.of()).doCallRealMethod()
+                .when(namedParameterJdbcTemplate).queryForList(anyString(), anyMap(), eq(String.class));
+
+        List<Map<String, Object>> lines = importFile("/people/import", ImportService.TEXT_CSV,
+                "full_name,year_of_birth\nImported raced,1990\nImported fresh,1991\n");
+
+        assertEquals(Map.of("type", "rejected", "record", 1, "message", "fullName: " + PersonValidator.DUPLICATE_NAME),
+                lines.get(0));
+        assertEquals(Map.of("type", "progress", "processed", 2, "imported", 1, "rejected", 1), lines.get(lines.size() - 1));
+        assertEquals(1, jdbcTemplate.queryForObject(
+                "select count(*) from person where full_name = 'Imported fresh'", Integer.class));
+    }
+
+    @Test
+    void importedBooksAreAddedToTheLoadedTitleIndex() throws Exception {
+        mockMvc.perform(get("/books/autocomplete").param("text", "Imported"))
+                .andExpect(status().isOk());
+
+        importFile("/books/import", ImportService.TEXT_CSV, "title,author,year\nImported zephyr,Imported author,2001\n");
+
+        int id = jdbcTemplate.queryForObject("select id from book where title = 'Imported zephyr'", Integer.class);
+        mockMvc.perform(get("/books/autocomplete").param("text", "imported zep"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].id").value(id));
+    }
+
+    @Test
+    void copiesOfExistingBooksGetTheIdsTheyWereInsertedWith() throws Exception {
+        jdbcTemplate.update("insert into book (title, author, year) values ('Imported twin', 'Imported author', 2001)");
+
+        importFile("/books/import", ImportService.TEXT_CSV,
+                "title,author,year\nImported twin,Imported author,2001\nIMPORTED TWIN,Imported author,2001\n" +
+                        "Imported twin,Imported author,2001\n");
+
+        List<Integer> ids = jdbcTemplate.queryForList("select id from book where upper(title) = 'IMPORTED TWIN' order by id",
+                Integer.class);
+        List<Integer> imported = applicationEvents.stream(BulkImportEvent.class)
+                .flatMap(event -> event.getEntities(Book.class).stream())
+                .map(Book::getId)
+                .collect(Collectors.toList());
+        assertEquals(ids.subList(1, ids.size()), imported);
+    }
+
+    private List<Map<String, Object>> importFile(String url, String contentType, String body) throws Exception {
+        String response = mockMvc.perform(post(url).contentType(contentType).content(body))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        List<Map<String, Object>> lines = new ArrayList<>();
+        for (String line : response.split("\n")) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> value = objectMapper.readValue(line, Map.class);
+            lines.add(value);
+        }
+        return lines;
+    }
+
+    private static List<Integer> rejectedRecords(List<Map<String, Object>> lines) {
+        return lines.stream()
+                .filter(line -> line.get("type").equals("rejected"))
+                .map(line -> (Integer) line.get("record"))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,199 @@
+package org.dmitrysulman.spring.secondboot.controllers;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.dmitrysulman.spring.secondboot.dto.LoanEvent;
+import org.dmitrysulman.spring.secondboot.dto.LoanHistory;
+import org.dmitrysulman.spring.secondboot.models.Book;
+import org.dmitrysulman.spring.secondboot.models.Person;
+import org.dmitrysulman.spring.secondboot.services.BookService;
+import org.dmitrysulman.spring.secondboot.services.LoanEventLog;
+import org.dmitrysulman.spring.secondboot.services.LoanHistoryService;
+import org.dmitrysulman.spring.secondboot.services.PersonService;
+import org.dmitrysulman.spring.secondboot.util.LoanCursor;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "library.loan-history.spill-file=${java.io.tmpdir}/loan-history-tests/loan-events.spill")
+@AutoConfigureMockMvc
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class LoanHistoryTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private PersonService personService;
+
+    @Autowired
+    private LoanEventLog loanEventLog;
+
+    @Autowired
+    private LoanHistoryService loanHistoryService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${library.loan-history.spill-file}")
+    private Path spillFile;
+
+    private int bookId;
+    private int personId;
+
+    @BeforeAll
+    void populate() {
+        personId = personService.save(new Person(0, "History Reader", 1990));
+        bookId = bookService.save(new Book(0, "History Title", "History Author", 1950));
+    }
+
+    @AfterAll
+    void cleanUp() {
+        bookService.delete(bookId);
+        personService.delete(personId);
+        jdbcTemplate.update("delete from loan_event where book_id = ? or person_id = ?", bookId, personId);
+    }
+
+    @Test
+    void loansAreLoggedInBackgroundAndPagedNewestFirst() throws Exception {
+        bookService.assign(bookId, personId);
+        awaitEvents(1);
+        bookService.release(bookId);
+        awaitEvents(2);
+
+        String next = mockMvc.perform(get("/api/books/{id}/loans", bookId).param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.events.length()").value(1))
+                .andExpect(jsonPath("$.events[0].type").value("RELEASED"))
+                .andExpect(jsonPath("$.events[0].personId").value(personId))
+                .andExpect(jsonPath("$.next").isString())
+                .andReturn().getResponse().getContentAsString().replaceAll(".*\"next\":\"([^\"]+)\".*", "$1");
+
+        mockMvc.perform(get("/api/books/{id}/loans", bookId).param("limit", "1").param("before", next))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.events[0].type").value("ASSIGNED"))
+                .andExpect(jsonPath("$.next").isEmpty());
+
+        mockMvc.perform(get("/api/people/{id}/loans", personId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.events.length()").value(2));
+
+        mockMvc.perform(get("/api/people/{id}/loans", personId).param("limit", "0"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/people/{id}/loans", personId).param("before", "42"))
+                .andExpect(status().isBadRequest());
+        assertEquals(0, journaledBytes());
+    }
+
+    @Test
+    void spilledEventsAreReplayedInTheOrderTheyHappened() throws Exception {
+        int otherPersonId = personId + 100_000;
+        jdbcTemplate.update("insert into loan_event (book_id, person_id, type, occurred_at) values (?, ?, 'RELEASED', ?)",
+                bookId, otherPersonId, new Timestamp(2000));
+        Files.createDirectories(spillFile.getParent());
+        Files.write(spillFile, List.of(bookId + "," + otherPersonId + ",ASSIGNED,1000", "truncated,"));
+
+        loanEventLog.replaySpill();
+
+        LoanHistory history = loanHistoryService.findByPersonId(otherPersonId, null, 1);
+        assertEquals(LoanEvent.Type.RELEASED, history.getEvents().get(0).getType());
+        history = loanHistoryService.findByPersonId(otherPersonId, LoanCursor.decode(history.getNext()).orElseThrow(), 1);
+        assertEquals(1, history.getEvents().size());
+        assertEquals(bookId, history.getEvents().get(0).getBookId());
+        assertEquals(1000, history.getEvents().get(0).getOccurredAt().getTime());
+        assertNull(history.getNext());
+        assertFalse(Files.exists(spillFile));
+        jdbcTemplate.update("delete from loan_event where person_id = ?", otherPersonId);
+    }
+
+    @Test
+    void deletingAPersonLogsTheReturnOfTheirBooks() throws Exception {
+        int leavingPersonId = personService.save(new Person(0, "History Leaver", 1990));
+        int leftBookId = bookService.save(new Book(0, "History Left Title", "History Author", 1950));
+        bookService.assign(leftBookId, leavingPersonId);
+        personService.delete(leavingPersonId);
+
+        for (int attempt = 0; attempt < 100 && loanHistoryService.findByPersonId(leavingPersonId, null, 10).getEvents().size() < 2; attempt++) {
+            loanEventLog.flush();
+            Thread.sleep(50);
+        }
+        List<LoanEvent> events = loanHistoryService.findByPersonId(leavingPersonId, null, 10).getEvents();
+        assertEquals(List.of(LoanEvent.Type.RELEASED, LoanEvent.Type.ASSIGNED),
+                events.stream().map(LoanEvent::getType).collect(Collectors.toList()));
+        bookService.delete(leftBookId);
+        jdbcTemplate.update("delete from loan_event where person_id = ?", leavingPersonId);
+    }
+
+    @Test
+    void journaledEventsAreRecoveredAfterACrash() throws Exception {
+        int otherPersonId = personId + 200_000;
+        Path segment = spillFile.resolveSibling(spillFile.getFileName() + ".wal.99");
+        Files.createDirectories(spillFile.getParent());
+        Files.write(segment, List.of(bookId + "," + otherPersonId + ",RELEASED,2000"));
+
+        loanEventLog.recoverJournal();
+        loanEventLog.replaySpill();
+
+        LoanHistory history = loanHistoryService.findByPersonId(otherPersonId, null, 10);
+        assertEquals(1, history.getEvents().size());
+        assertEquals(LoanEvent.Type.RELEASED, history.getEvents().get(0).getType());
+        assertFalse(Files.exists(segment));
+        jdbcTemplate.update("delete from loan_event where person_id = ?", otherPersonId);
+    }
+
+    @Test
+    void anotherInstanceCannotShareTheSpillFile() {
+        LoanEventLog other = new LoanEventLog(jdbcTemplate, transactionTemplate, new SimpleMeterRegistry(),
+                10, 10, 10, 10, spillFile.toString());
+
+        assertThrows(IllegalStateException.class, other::start);
+    }
+
+    private long journaledBytes() throws IOException {
+        try (Stream<Path> files = Files.list(spillFile.getParent())) {
+            return files.filter(file -> file.getFileName().toString().startsWith(spillFile.getFileName() + ".wal."))
+                    .mapToLong(file -> file.toFile().length())
+                    .sum();
+        }
+    }
+
+    private void awaitEvents(int count) throws InterruptedException {
+        for (int attempt = 0; attempt < 100; attempt++) {
+            loanEventLog.flush();
+            if (loanHistoryService.findByBookId(bookId, null, 10).getEvents().size() == count) {
+                return;
+            }
+            Thread.sleep(50);
+        }
+        assertEquals(count, loanHistoryService.findByBookId(bookId, null, 10).getEvents().size());
+    }
+}
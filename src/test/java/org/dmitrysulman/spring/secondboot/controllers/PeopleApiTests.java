@@ -0,0 +1,67 @@
+package org.dmitrysulman.spring.secondboot.controllers;
+
+import com.jayway.jsonpath.JsonPath;
+import org.dmitrysulman.spring.secondboot.models.Book;
+import org.dmitrysulman.spring.secondboot.models.Person;
+import org.dmitrysulman.spring.secondboot.services.BookService;
+import org.dmitrysulman.spring.secondboot.services.PersonService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class PeopleApiTests {
+
+    private static final int HELD_BOOKS = 25;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private PersonService personService;
+
+    private final List<Integer> bookIds = new ArrayList<>();
+    private int personId;
+
+    @AfterEach
+    void cleanUp() {
+        personService.delete(personId);
+        bookIds.forEach(bookService::delete);
+    }
+
+    @Test
+    void pagesTheBooksOfAPerson() throws Exception {
+        personId = personService.save(new Person(0, "Api heavy reader", 1990));
+        for (int i = 0; i < HELD_BOOKS; i++) {
+            bookIds.add(bookService.save(new Book(0, "Api held " + i, "Api author", 2000)));
+        }
+        bookService.assignAll(personId, bookIds);
+
+        String first = mockMvc.perform(get("/api/people/{id}", personId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.books.length()").value(20))
+                .andExpect(jsonPath("$.books[0].id").value(bookIds.get(0)))
+                .andReturn().getResponse().getContentAsString();
+        mockMvc.perform(get(JsonPath.<String>read(first, "$.booksNext")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.books.length()").value(HELD_BOOKS - 20))
+                .andExpect(jsonPath("$.books[0].id").value(bookIds.get(20)))
+                .andExpect(jsonPath("$.next").doesNotExist());
+        mockMvc.perform(get("/api/people/{id}/books", personId).param("limit", "0"))
+                .andExpect(status().isBadRequest());
+    }
+}
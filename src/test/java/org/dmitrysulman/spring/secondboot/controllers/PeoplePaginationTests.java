@@ -0,0 +1,99 @@
+package org.dmitrysulman.spring.secondboot.controllers;
+
+import org.dmitrysulman.spring.secondboot.dto.PersonSuggestion;
+import org.dmitrysulman.spring.secondboot.models.Person;
+import org.dmitrysulman.spring.secondboot.services.PersonService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Slice;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "library.page-cache.enabled=false")
+@AutoConfigureMockMvc
+class PeoplePaginationTests {
+
+    // Saved out of name order, so the pages cannot follow the ids
+    private static final List<String> NAMES = List.of("Paged reader c", "Paged reader a", "Paged reader e",
+            "Paged reader b", "Paged reader d");
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private PersonService personService;
+
+    private final List<Integer> ids = new ArrayList<>();
+
+    @BeforeEach
+    void populate() {
+        NAMES.forEach(name -> ids.add(personService.save(new Person(0, name, 1990))));
+    }
+
+    @AfterEach
+    void cleanUp() {
+        ids.forEach(personService::delete);
+    }
+
+    @Test
+    void pagesThroughAPrefixInNameOrder() {
+        Slice<PersonSuggestion> first = personService.findByFullNameStartingWith("paged READER", 0, 2);
+        Slice<PersonSuggestion> last = personService.findByFullNameStartingWith("paged READER", 2, 2);
+
+        assertEquals(List.of("Paged reader a", "Paged reader b"), names(first));
+        assertTrue(first.hasNext());
+        assertEquals(List.of("Paged reader e"), names(last));
+        assertFalse(last.hasNext());
+    }
+
+    @Test
+    void listsEveryoneInNameOrderWithoutAPrefix() {
+        Slice<PersonSuggestion> page = personService.findByFullNameStartingWith(null, 0, 100);
+
+        List<String> names = names(page);
+        assertEquals(names.stream().sorted().collect(Collectors.toList()), names);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"page=-1", "people_per_page=0", "people_per_page=-5", "people_per_page=101",
+            "people_per_page=100000000"})
+    void rejectsPagesOutOfBounds(String parameter) throws Exception {
+        mockMvc.perform(get("/people?" + parameter))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/people?text=paged&" + parameter))
+                .andExpect(status().isBadRequest());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"page=-1", "books_per_page=0", "books_per_page=-5", "books_per_page=101",
+            "books_per_page=100000000"})
+    void rejectsLoanPagesOutOfBounds(String parameter) throws Exception {
+        mockMvc.perform(get("/people/" + ids.get(0) + "?" + parameter))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void answersLoanPagesWithinBounds() throws Exception {
+        mockMvc.perform(get("/people/" + ids.get(0) + "?page=3&books_per_page=100"))
+                .andExpect(status().isOk());
+    }
+
+    private static List<String> names(Slice<PersonSuggestion> page) {
+        return page.getContent().stream().map(PersonSuggestion::getFullName).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,258 @@
+package org.dmitrysulman.spring.secondboot.controllers;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.dmitrysulman.spring.secondboot.config.QueryCountInterceptor;
+import org.dmitrysulman.spring.secondboot.dto.ImportProgress;
+import org.dmitrysulman.spring.secondboot.models.Book;
+import org.dmitrysulman.spring.secondboot.models.Person;
+import org.dmitrysulman.spring.secondboot.services.BookService;
+import org.dmitrysulman.spring.secondboot.services.ImportService;
+import org.dmitrysulman.spring.secondboot.services.PersonService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "library.page-cache.enabled=false")
+@AutoConfigureMockMvc
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class QueryBudgetTests {
+
+    private static final int PEOPLE = 5;
+    private static final int BOOKS = 40;
+
+    private static final ImportService.Listener IGNORE_PROGRESS = new ImportService.Listener() {
+        @Override
+        public void onRejected(long record, String message) {
+        }
+
+        @Override
+        public void onProgress(ImportProgress progress) {
+        }
+    };
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private PersonService personService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ImportService importService;
+
+    private final List<Integer> personIds = new ArrayList<>();
+    private final List<Integer> bookIds = new ArrayList<>();
+    private int fixtures;
+
+    @BeforeAll
+    void populate() {
+        for (int i = 0; i < PEOPLE; i++) {
+            personIds.add(personService.save(new Person(0, "Reader " + i, 1980 + i)));
+        }
+        for (int i = 0; i < BOOKS; i++) {
+            int bookId = bookService.save(new Book(0, "Title " + i, "Author " + i, 1900 + i));
+            bookIds.add(bookId);
+            if (i % 4 != 0) {
+                bookService.assign(bookId, personIds.get(i % PEOPLE));
+            }
+        }
+        // Loads the duplicate-name filter, a one-off cost that would otherwise land on the first /people/add
+        personService.mightExist("");
+        // Draws the first block of book ids, which later imports take their ids from without a round trip
+        importService.importBooks(new ByteArrayInputStream("title,author,year\nWarm-up,Imported author,2000\n"
+                .getBytes(StandardCharsets.UTF_8)), ImportService.Format.CSV, IGNORE_PROGRESS);
+    }
+
+    @AfterAll
+    void cleanUp() {
+        bookIds.forEach(bookService::delete);
+        personIds.forEach(personService::delete);
+        jdbcTemplate.update("delete from book where author = 'Imported author'");
+        jdbcTemplate.update("delete from person where full_name like 'Imported reader %'");
+    }
+
+    @ParameterizedTest(name = "{0} runs at most {1} statements")
+    @CsvSource({
+            "/books, 1",
+            "/books?page=0&books_per_page=40, 1",
+            "/books?page=0&books_per_page=40&sort_by_year=true, 1",
+            "/books?cursor=&books_per_page=40, 1",
+            "/books/search?text=title, 1",
+            "/books/export, 1",
+            "/books/export?format=ndjson, 1",
+            "/books/{ownedBook}, 2",
+            "/books/{freeBook}, 1",
+            "/books/{ownedBook}/edit, 2",
+            "/people, 1",
+            "/people?text=reader&page=1&people_per_page=2, 1",
+            "/people/lookup?text=read, 1",
+            "/people/{person}, 3",
+            "/people/{person}/edit, 1",
+            "/api/books?after=0&limit=40, 2",
+            "/api/books/{ownedBook}, 2",
+            "/api/books/changes?limit=40, 2",
+            "/api/people/{person}, 3"
+    })
+    void staysWithinQueryBudget(String route, int budget) throws Exception {
+        String url = resolve(route);
+        // Warms the in-memory indexes and the approximate count; entity and query caches start cold
+        mockMvc.perform(get(url)).andExpect(status().isOk());
+        SessionFactory sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+        sessionFactory.getCache().evictAll();
+
+        Statistics statistics = sessionFactory.getStatistics();
+        statistics.clear();
+        mockMvc.perform(get(url)).andExpect(status().isOk());
+        long statements = statistics.getPrepareStatementCount();
+
+        assertTrue(statements <= budget, url + " ran " + statements + " statements, budget is " + budget);
+    }
+
+    @ParameterizedTest(name = "{0} revalidates with a single statement")
+    @ValueSource(strings = {"/api/books?after=0&limit=40", "/api/books/{ownedBook}", "/api/people/{person}"})
+    void revalidatesWithoutLoading(String route) throws Exception {
+        String url = resolve(route);
+        String eTag = mockMvc.perform(get(url)).andExpect(status().isOk()).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        mockMvc.perform(get(url).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void checkoutChangesETags() throws Exception {
+        int person = personService.save(new Person(0, "Tagged reader", 1990));
+        int book = bookService.save(new Book(0, "Tagged title", "Tagged author", 2000));
+        personIds.add(person);
+        bookIds.add(book);
+        String bookETag = mockMvc.perform(get("/api/books/" + book)).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        String personETag = mockMvc.perform(get("/api/people/" + person)).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        bookService.assign(book, person);
+
+        mockMvc.perform(get("/api/books/" + book).header(HttpHeaders.IF_NONE_MATCH, bookETag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.personId").value(person));
+        mockMvc.perform(get("/api/people/" + person).header(HttpHeaders.IF_NONE_MATCH, personETag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.books[0].id").value(book));
+    }
+
+    @ParameterizedTest(name = "POST {0} runs at most {2} statements")
+    @CsvSource(delimiter = '|', value = {
+            "/books/add | title=New title&author=New author&year=2000 | 1",
+            "/books/{book}/edit | title=Changed title&author=Changed author&year=2001 | 1",
+            "/books/{book}/delete | | 1",
+            "/books/{book}/assign | id={person} | 2",
+            "/books/{ownedBook}/release | | 2",
+            "/books/checkout | {\"personId\": {person}, \"bookIds\": [{book}, {ownedBook}]} | 3",
+            "/books/checkout | {\"personId\": {person}, \"bookIds\": [{book}, {spareBook}, {lastBook}]} | 3",
+            "/books/return | {\"personId\": {owner}, \"bookIds\": [{book}, {ownedBook}]} | 2",
+            "/people/add | fullName=New reader {n}&yearOfBirth=1990 | 1",
+            "/people/{person}/edit | fullName=Renamed reader {n}&yearOfBirth=1991 | 1",
+            "/people/{owner}/delete | | 3",
+            "/books/import | title,author,year\\nImported {n}a,Imported author,2000\\nImported {n}b,Imported author,2001 | 1",
+            "/people/import | full_name,year_of_birth\\nImported reader {n}a,1990\\nImported reader {n}b,1991 | 2"
+    })
+    void mutationStaysWithinQueryBudget(String route, String body, int budget) throws Exception {
+        int n = ++fixtures;
+        int person = personService.save(new Person(0, "Fresh reader " + n, 1990));
+        int owner = personService.save(new Person(0, "Fresh owner " + n, 1990));
+        int book = bookService.save(new Book(0, "Fresh title " + n, "Fresh author", 2000));
+        int ownedBook = bookService.save(new Book(0, "Owned title " + n, "Fresh author", 2000));
+        int spareBook = bookService.save(new Book(0, "Spare title " + n, "Fresh author", 2000));
+        int lastBook = bookService.save(new Book(0, "Last title " + n, "Fresh author", 2000));
+        bookService.assign(ownedBook, owner);
+        personIds.addAll(List.of(person, owner));
+        bookIds.addAll(List.of(book, ownedBook, spareBook, lastBook));
+        entityManagerFactory.unwrap(SessionFactory.class).getCache().evictAll();
+
+        Map<String, Integer> placeholders = Map.of("{n}", n, "{person}", person, "{owner}", owner,
+                "{ownedBook}", ownedBook, "{spareBook}", spareBook, "{lastBook}", lastBook, "{book}", book);
+        String url = fill(route, placeholders);
+        String content = Objects.isNull(body) ? "" : fill(body, placeholders);
+        MockHttpServletRequestBuilder request = post(url).content(content).contentType(contentType(url, content));
+
+        // Counted at the JDBC level, so the JdbcTemplate batches of the import endpoints are included
+        double before = postedStatements();
+        int status = mockMvc.perform(request).andReturn().getResponse().getStatus();
+        long statements = Math.round(postedStatements() - before);
+
+        assertTrue(status < 400, url + " answered " + status);
+        assertTrue(statements <= budget, url + " ran " + statements + " statements, budget is " + budget);
+    }
+
+    private double postedStatements() {
+        return meterRegistry.find(QueryCountInterceptor.METRIC_NAME).tag("method", "POST").summaries().stream()
+                .mapToDouble(DistributionSummary::totalAmount)
+                .sum();
+    }
+
+    private static String contentType(String url, String content) {
+        if (url.endsWith("/import")) {
+            return ImportService.TEXT_CSV;
+        }
+        return content.startsWith("{") ? MediaType.APPLICATION_JSON_VALUE : MediaType.APPLICATION_FORM_URLENCODED_VALUE;
+    }
+
+    private String resolve(String route) {
+        return route
+                .replace("{ownedBook}", String.valueOf(bookIds.get(1)))
+                .replace("{freeBook}", String.valueOf(bookIds.get(0)))
+                .replace("{person}", String.valueOf(personIds.get(1)));
+    }
+
+    private static String fill(String template, Map<String, Integer> placeholders) {
+        String filled = template.replace("\\n", "\n");
+        for (Map.Entry<String, Integer> placeholder : placeholders.entrySet()) {
+            filled = filled.replace(placeholder.getKey(), String.valueOf(placeholder.getValue()));
+        }
+        return filled;
+    }
+}
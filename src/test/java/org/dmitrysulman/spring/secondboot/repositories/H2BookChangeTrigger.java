@@ -0,0 +1,64 @@
+package org.dmitrysulman.spring.secondboot.repositories;
+
+import org.h2.api.Trigger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Objects;
+
+// Stands in for the PL/pgSQL triggers and txid functions of the V5 migration
+public class H2BookChangeTrigger implements Trigger {
+
+    private int idColumn;
+    private int changeXidColumn;
+
+    @Override
+    public void init(Connection connection, String schemaName, String triggerName, String tableName, boolean before,
+                     int type) throws SQLException {
+        idColumn = position(connection, schemaName, tableName, "id");
+        changeXidColumn = position(connection, schemaName, tableName, "change_xid");
+    }
+
+    @Override
+    public void fire(Connection connection, Object[] oldRow, Object[] newRow) throws SQLException {
+        long changeXid = next(connection);
+        if (Objects.nonNull(newRow)) {
+            newRow[changeXidColumn] = changeXid;
+            return;
+        }
+        try (PreparedStatement statement = connection.prepareStatement(
+                "merge into book_tombstone (book_id, change_xid) key (book_id) values (?, ?)")) {
+            statement.setObject(1, oldRow[idColumn]);
+            statement.setLong(2, changeXid);
+            statement.executeUpdate();
+        }
+    }
+
+    public static String currentSnapshot() {
+        return "";
+    }
+
+    public static long snapshotXmin(String snapshot) {
+        return Long.MAX_VALUE;
+    }
+
+    private static long next(Connection connection) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement("select next value for book_change_xid_seq");
+             ResultSet rs = select.executeQuery()) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private static int position(Connection connection, String schemaName, String tableName, String column)
+            throws SQLException {
+        try (ResultSet columns = connection.getMetaData().getColumns(null, schemaName, tableName, column)) {
+            if (!columns.next()) {
+                throw new SQLException("No column " + column + " in " + tableName);
+            }
+            return columns.getInt("ORDINAL_POSITION") - 1;
+        }
+    }
+}
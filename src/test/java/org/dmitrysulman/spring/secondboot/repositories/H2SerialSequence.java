@@ -0,0 +1,12 @@
+package org.dmitrysulman.spring.secondboot.repositories;
+
+// Stands in for pg_get_serial_sequence, which H2 lacks; the H2 schema names its id sequences the way PostgreSQL does
+public class H2SerialSequence {
+
+    private H2SerialSequence() {
+    }
+
+    public static String serialSequence(String tableName, String columnName) {
+        return tableName + "_" + columnName + "_seq";
+    }
+}
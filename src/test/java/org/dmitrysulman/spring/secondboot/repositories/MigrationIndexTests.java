@@ -0,0 +1,103 @@
+package org.dmitrysulman.spring.secondboot.repositories;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// QueryPlanTests checks the PostgreSQL plans only when a database is given, while every other test runs on the H2
+// migrations. This keeps the two migration sets from drifting apart in the indexes they end up with.
+class MigrationIndexTests {
+
+    // H2 has no expression indexes, so it indexes the plain title instead
+    private static final Set<String> POSTGRESQL_ONLY = Set.of("person_upper_full_name_idx", "book_upper_title_idx");
+    private static final Set<String> H2_ONLY = Set.of("book_title_idx");
+
+    private static final Pattern CREATE_INDEX = Pattern.compile(
+            "create (unique )?index if not exists (\\w+) on (\\w+) \\(([^;]+)\\)\\s*;");
+    private static final Pattern ADD_UNIQUE = Pattern.compile(
+            "alter table (\\w+) add constraint if not exists (\\w+) unique \\(([^;]+)\\)\\s*;");
+    private static final Pattern DROP_INDEX = Pattern.compile("drop index if exists (\\w+)\\s*;");
+    private static final Pattern VERSION = Pattern.compile("V(\\d+)__.*");
+
+    @Test
+    void bothVendorsMigrateInTheSameSteps() throws IOException {
+        assertEquals(fileNames("postgresql"), fileNames("h2"));
+    }
+
+    @Test
+    void bothVendorsEndUpWithTheSameIndexes() throws IOException {
+        Map<String, String> postgresql = indexes("postgresql");
+        Map<String, String> h2 = indexes("h2");
+
+        assertTrue(postgresql.keySet().containsAll(POSTGRESQL_ONLY), postgresql::toString);
+        assertTrue(h2.keySet().containsAll(H2_ONLY), h2::toString);
+        postgresql.keySet().removeAll(POSTGRESQL_ONLY);
+        h2.keySet().removeAll(H2_ONLY);
+        assertEquals(postgresql, h2);
+    }
+
+    // Index name to its unique flag, table and columns, as left after replaying every migration in order
+    private static Map<String, String> indexes(String vendor) throws IOException {
+        Map<String, String> indexes = new TreeMap<>();
+        for (Resource migration : migrations(vendor)) {
+            String sql = withoutComments(StreamUtils.copyToString(migration.getInputStream(), StandardCharsets.UTF_8));
+            for (String statement : sql.split(";")) {
+                statement = statement.trim().replaceAll("\\s+", " ").toLowerCase() + ";";
+                Matcher matcher;
+                if ((matcher = CREATE_INDEX.matcher(statement)).matches()) {
+                    indexes.put(matcher.group(2), definition(matcher.group(1) != null, matcher.group(3), matcher.group(4)));
+                } else if ((matcher = ADD_UNIQUE.matcher(statement)).matches()) {
+                    indexes.put(matcher.group(2), definition(true, matcher.group(1), matcher.group(3)));
+                } else if ((matcher = DROP_INDEX.matcher(statement)).matches()) {
+                    indexes.remove(matcher.group(1));
+                }
+            }
+        }
+        return indexes;
+    }
+
+    private static String definition(boolean unique, String table, String columns) {
+        return (unique ? "unique " : "") + table + " (" + columns.replace(" ", "") + ")";
+    }
+
+    private static String withoutComments(String sql) {
+        return sql.replaceAll("--[^\n]*", "");
+    }
+
+    private static List<String> fileNames(String vendor) throws IOException {
+        return migrations(vendor).stream().map(Resource::getFilename).collect(Collectors.toList());
+    }
+
+    private static List<Resource> migrations(String vendor) throws IOException {
+        Resource[] resources = new PathMatchingResourcePatternResolver()
+                .getResources("classpath:db/migration/" + vendor + "/V*__*.sql");
+        return Arrays.stream(resources)
+                .sorted(Comparator.comparingInt(MigrationIndexTests::version))
+                .collect(Collectors.toList());
+    }
+
+    private static int version(Resource migration) {
+        Matcher matcher = VERSION.matcher(Objects.requireNonNull(migration.getFilename()));
+        if (!matcher.matches()) {
+            throw new IllegalStateException("Not a versioned migration: " + migration.getFilename());
+        }
+        return Integer.parseInt(matcher.group(1));
+    }
+}
@@ -0,0 +1,247 @@
+package org.dmitrysulman.spring.secondboot.repositories;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.proxy.ParameterSetOperation;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import org.dmitrysulman.spring.secondboot.benchmarks.CatalogGenerator;
+import org.dmitrysulman.spring.secondboot.util.LoanPolicy;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.fail;
+
+// Needs a PostgreSQL database, so it is skipped unless one is given, e.g.
+//   ./mvnw test -Dtest=QueryPlanTests -Dlibrary.explain.url=jdbc:postgresql://localhost:5432/postgres \
+//       -Dlibrary.explain.username=postgres -Dlibrary.explain.password=secret
+// Run it after changing a repository query or a PostgreSQL migration; MigrationIndexTests keeps the H2 migrations
+// that every other test runs on in step with the PostgreSQL ones.
+@SpringBootTest(properties = {
+        "spring.datasource.driver-class-name=org.postgresql.Driver",
+        "spring.datasource.url=${library.explain.url}",
+        "spring.datasource.username=${library.explain.username:postgres}",
+        "spring.datasource.password=${library.explain.password:}",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.PostgreSQLDialect"
+})
+@EnabledIfSystemProperty(named = "library.explain.url", matches = "jdbc:postgresql:.*")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class QueryPlanTests {
+
+    private static final int BOOKS = Integer.getInteger("library.explain.books", 100_000);
+    // Everything is migrated and seeded into a schema of its own, so the target database is left as it was
+    private static final String SCHEMA = "library_explain_" + Long.toHexString(System.nanoTime());
+
+    @DynamicPropertySource
+    static void throwawaySchema(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.hikari.schema", () -> SCHEMA);
+        registry.add("spring.flyway.schemas", () -> SCHEMA);
+        registry.add("spring.jpa.properties.hibernate.default_schema", () -> SCHEMA);
+    }
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private PersonRepository personRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<CapturedQuery> captured = new CopyOnWriteArrayList<>();
+    private int bookId;
+    private int personId;
+    private String fullName;
+
+    @BeforeAll
+    void seedAndCapture() throws Exception {
+        new CatalogGenerator(jdbcTemplate, 42).generate(BOOKS);
+        // Leaves tombstones behind for the change feed
+        jdbcTemplate.update("delete from book where id % 50 = 0");
+        jdbcTemplate.execute("analyze book");
+        jdbcTemplate.execute("analyze book_tombstone");
+        jdbcTemplate.execute("analyze person");
+        bookId = jdbcTemplate.queryForObject("select id from book order by id offset 500 limit 1", Integer.class);
+        personId = jdbcTemplate.queryForObject("select person_id from book where person_id is not null limit 1", Integer.class);
+        fullName = jdbcTemplate.queryForObject("select full_name from person where id = ?", String.class, personId);
+
+        dataSource.unwrap(ProxyDataSource.class).getProxyConfig().getQueryListener().addListener(new QueryExecutionListener() {
+            @Override
+            public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+                for (QueryInfo queryInfo : queryInfoList) {
+                    List<ParameterSetOperation> parameters = queryInfo.getParametersList().isEmpty()
+                            ? List.of() : new ArrayList<>(queryInfo.getParametersList().get(0));
+                    captured.add(new CapturedQuery(queryInfo.getQuery(), parameters));
+                }
+            }
+
+            @Override
+            public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+            }
+        });
+    }
+
+    @AfterAll
+    void cleanUp() {
+        jdbcTemplate.execute("drop schema " + SCHEMA + " cascade");
+    }
+
+    Stream<Arguments> repositoryQueries() {
+        Date overdueBefore = LoanPolicy.overdueBefore();
+        List<Integer> ids = IntStream.range(0, 20).map(i -> bookId + i).boxed().collect(Collectors.toList());
+        return Stream.of(
+                query("book by id", false, () -> bookRepository.findById(bookId)),
+                query("page by id", false, () -> bookRepository.findAllBy(PageRequest.of(10, 20, Sort.by("id")))),
+                query("page by year", false, () -> bookRepository.findAllBy(PageRequest.of(10, 20, Sort.by("year", "id")))),
+                query("listings by ids", false, () -> bookRepository.findListingsByIdIn(ids)),
+                query("keyset after id", false, () -> bookRepository.findAfterId(bookId, PageRequest.of(0, 21))),
+                query("keyset before id", false, () -> bookRepository.findBeforeId(bookId, PageRequest.of(0, 21))),
+                query("keyset after year", false, () -> bookRepository.findAfterYearAndId(1950, bookId, PageRequest.of(0, 21))),
+                query("keyset before year", false, () -> bookRepository.findBeforeYearAndId(1950, bookId, PageRequest.of(0, 21))),
+                query("loans of person", false, () -> bookRepository.findLoansByPersonId(personId, overdueBefore, PageRequest.of(0, 20))),
+                query("loan summary", false, () -> bookRepository.summarizeLoansByPersonId(personId, overdueBefore)),
+                query("book revision", false, () -> bookRepository.findRevisionById(bookId)),
+                query("page revisions", false, () -> bookRepository.findRevisionsAfterId(bookId, PageRequest.of(0, 50))),
+                query("book view", false, () -> bookRepository.findViewById(bookId)),
+                query("page views", false, () -> bookRepository.findViewsAfterId(bookId, PageRequest.of(0, 50))),
+                query("change feed", false, () -> bookRepository.findChangedSince(0, 0, PageRequest.of(0, 100))),
+                query("deleted feed", false, () -> bookRepository.findDeletedSince(0, 0, PageRequest.of(0, 100))),
+                query("books of person", false, () -> bookRepository.findSummariesByPersonIdAfterId(personId, 0, PageRequest.of(0, 20))),
+                query("conditional checkout", false, () -> bookRepository.assignIfFree(bookId, personId, new Date())),
+                query("lock holders", false, () -> bookRepository.lockHoldersByIdIn(ids)),
+                query("bulk checkout", false, () -> bookRepository.assignAll(ids, personId, new Date())),
+                query("bulk return", false, () -> bookRepository.releaseAll(ids)),
+                query("books held by person", false, () -> bookRepository.findIdsByPersonId(personId)),
+                query("release books of person", false, () -> bookRepository.releaseAllByPersonId(personId)),
+                query("person by name", false, () -> personRepository.findByFullName(fullName)),
+                query("person name prefix", false, () -> personRepository.findByFullNameStartingWithIgnoreCase("reader 12",
+                        PageRequest.of(0, 20, Sort.by("fullName")))),
+                // What the default people page sends, with no name typed in
+                query("people page", false, () -> personRepository.findAllBy(PageRequest.of(10, 20, Sort.by("fullName")))),
+                query("person revision", false, () -> personRepository.findRevisionById(personId)),
+                // Deliberate full reads: every person at once (PersonServiceBenchmark only), the overdue report and
+                // the export
+                query("all people", true, () -> personRepository.findAll()),
+                query("overdue report", true, () -> {
+                    try (Stream<?> loans = bookRepository.streamOverdueLoans(overdueBefore)) {
+                        return loans.count();
+                    }
+                }),
+                query("export", true, () -> {
+                    bookRepository.scrollAllWithPerson(1000, book -> {
+                    });
+                    return null;
+                })
+        );
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("repositoryQueries")
+    void usesIndexes(String name, boolean fullScanExpected, QueryCall call) throws Exception {
+        entityManagerFactory.getCache().evictAll();
+        captured.clear();
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.execute(status -> {
+            call.run();
+            status.setRollbackOnly();
+            return null;
+        });
+        List<CapturedQuery> queries = new ArrayList<>(captured);
+        assertFalse(queries.isEmpty(), name + " ran no statements");
+
+        for (CapturedQuery query : queries) {
+            JsonNode plan = objectMapper.readTree(explain(query)).get(0).get("Plan");
+            List<String> scanned = new ArrayList<>();
+            collectSeqScans(plan, scanned);
+            if (!fullScanExpected && !scanned.isEmpty()) {
+                fail(name + " scans " + scanned + " sequentially:\n" + query.sql + "\n" + plan.toPrettyString());
+            }
+        }
+    }
+
+    private String explain(CapturedQuery query) {
+        return jdbcTemplate.execute((ConnectionCallback<String>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement("explain (format json) " + query.sql)) {
+                for (ParameterSetOperation parameter : query.parameters) {
+                    try {
+                        parameter.getMethod().invoke(statement, parameter.getArgs());
+                    } catch (ReflectiveOperationException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    resultSet.next();
+                    return resultSet.getString(1);
+                }
+            }
+        });
+    }
+
+    private static void collectSeqScans(JsonNode plan, List<String> scanned) {
+        if (plan.path("Node Type").asText().equals("Seq Scan")) {
+            scanned.add(plan.path("Relation Name").asText());
+        }
+        for (JsonNode child : plan.path("Plans")) {
+            collectSeqScans(child, scanned);
+        }
+    }
+
+    private static Arguments query(String name, boolean fullScanExpected, QueryCall call) {
+        return Arguments.of(name, fullScanExpected, call);
+    }
+
+    @FunctionalInterface
+    interface QueryCall {
+        Object run();
+    }
+
+    private static class CapturedQuery {
+        private final String sql;
+        private final List<ParameterSetOperation> parameters;
+
+        private CapturedQuery(String sql, List<ParameterSetOperation> parameters) {
+            this.sql = sql;
+            this.parameters = parameters;
+        }
+    }
+}
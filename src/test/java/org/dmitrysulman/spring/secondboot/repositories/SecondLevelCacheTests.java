@@ -0,0 +1,172 @@
+package org.dmitrysulman.spring.secondboot.repositories;
+
+import org.dmitrysulman.spring.secondboot.models.Book;
+import org.dmitrysulman.spring.secondboot.models.Person;
+import org.dmitrysulman.spring.secondboot.services.BookService;
+import org.dmitrysulman.spring.secondboot.services.PersonService;
+import org.hibernate.Hibernate;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.Cache;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class SecondLevelCacheTests {
+
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private PersonService personService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final List<Integer> bookIds = new ArrayList<>();
+    private final List<Integer> personIds = new ArrayList<>();
+
+    @AfterEach
+    void cleanUp() {
+        bookIds.forEach(bookService::delete);
+        personIds.forEach(personService::delete);
+    }
+
+    @Test
+    void mutationsKeepUnrelatedEntriesCached() {
+        int reader = person("Cache reader");
+        int bystander = person("Cache bystander");
+        int book = book("Cache checked out");
+        int unrelated = book("Cache unrelated");
+        // Identity inserts bypass the cache, so read the rows in first
+        personService.findOne(bystander);
+        bookService.findOne(unrelated);
+        Cache cache = entityManagerFactory.getCache();
+        assertTrue(cache.contains(Book.class, unrelated));
+
+        bookService.assign(book, reader);
+        assertTrue(cache.contains(Book.class, unrelated));
+
+        bookService.update(book, new Book(0, "Cache renamed", "Cache author", 2001));
+        bookService.releaseAll(reader, List.of(book));
+        personService.update(reader, new Person(0, "Cache reader renamed", 1990));
+        assertTrue(cache.contains(Book.class, unrelated));
+        assertTrue(cache.contains(Person.class, bystander));
+
+        bookService.assign(book, reader);
+        personService.delete(reader);
+        personIds.remove(Integer.valueOf(reader));
+        assertTrue(cache.contains(Book.class, unrelated));
+        assertTrue(cache.contains(Person.class, bystander));
+    }
+
+    @Test
+    void checkoutRefreshesTheCachedBooksOfTheReader() {
+        int reader = person("Cache collection reader");
+        int book = book("Cache collection book");
+        assertEquals(List.of(), booksOf(reader));
+
+        bookService.assign(book, reader);
+        assertEquals(List.of(book), booksOf(reader));
+
+        bookService.releaseAll(reader, List.of(book));
+        assertEquals(List.of(), booksOf(reader));
+    }
+
+    @Test
+    void checkoutEvictsTheCachedBook() {
+        int reader = person("Cache holder");
+        int book = book("Cache held book");
+        bookService.findOne(book);
+        assertTrue(entityManagerFactory.getCache().contains(Book.class, book));
+
+        bookService.assign(book, reader);
+        assertEquals(reader, bookService.findOne(book).orElseThrow().getPerson().getId());
+        bookService.releaseAll(reader, List.of(book));
+    }
+
+    @Test
+    void editsAndDeletesEvictTheirCachedRows() {
+        int reader = person("Cache edited reader");
+        int book = book("Cache edited book");
+        personService.findByFullName("Cache edited reader");
+        personService.findOne(reader);
+        bookService.findOne(book);
+
+        bookService.update(book, new Book(0, "Cache edited again", "Cache author", 2002));
+        personService.update(reader, new Person(0, "Cache renamed reader", 1991));
+        assertEquals("Cache edited again", bookService.findOne(book).orElseThrow().getTitle());
+        assertEquals("Cache renamed reader", personService.findOne(reader).orElseThrow().getFullName());
+        assertTrue(personService.findByFullName("Cache edited reader").isEmpty());
+
+        bookService.assign(book, reader);
+        booksOf(reader);
+        bookService.delete(book);
+        bookIds.remove(Integer.valueOf(book));
+        assertTrue(bookService.findOne(book).isEmpty());
+        assertEquals(List.of(), booksOf(reader));
+    }
+
+    @Test
+    void readersThatLoadedBeforeAnEditCannotCacheTheOldRow() {
+        int reader = person("Cache racing reader");
+        int book = book("Cache racing book");
+        TransactionTemplate snapshot = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        snapshot.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+
+        snapshot.executeWithoutResult(status -> {
+            // Pins the snapshot, so the loads below see the rows as they were before the edits
+            entityManager.createNativeQuery("select count(*) from book, person").getSingleResult();
+            CompletableFuture.runAsync(() -> {
+                bookService.update(book, new Book(0, "Cache raced book", "Cache author", 2003));
+                personService.update(reader, new Person(0, "Cache raced reader", 1992));
+            }).join();
+
+            assertEquals("Cache racing book", entityManager.find(Book.class, book).getTitle());
+            assertEquals("Cache racing reader", entityManager.find(Person.class, reader).getFullName());
+        });
+
+        assertEquals("Cache raced book", bookService.findOne(book).orElseThrow().getTitle());
+        assertEquals("Cache raced reader", personService.findOne(reader).orElseThrow().getFullName());
+    }
+
+    private List<Integer> booksOf(int personId) {
+        return transactionTemplate.execute(status -> {
+            List<Book> books = entityManager.find(Person.class, personId).getBooks();
+            Hibernate.initialize(books);
+            List<Integer> ids = new ArrayList<>();
+            books.forEach(book -> ids.add(book.getId()));
+            return ids;
+        });
+    }
+
+    private int person(String fullName) {
+        int id = personService.save(new Person(0, fullName, 1990));
+        personIds.add(id);
+        return id;
+    }
+
+    private int book(String title) {
+        int id = bookService.save(new Book(0, title, "Cache author", 2000));
+        bookIds.add(id);
+        return id;
+    }
+}
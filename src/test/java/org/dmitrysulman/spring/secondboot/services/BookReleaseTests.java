@@ -0,0 +1,83 @@
+package org.dmitrysulman.spring.secondboot.services;
+
+import org.dmitrysulman.spring.secondboot.models.Book;
+import org.dmitrysulman.spring.secondboot.models.Person;
+import org.dmitrysulman.spring.secondboot.repositories.BookRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class BookReleaseTests {
+
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private PersonService personService;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private int bookId;
+    private int firstReader;
+    private int secondReader;
+
+    @BeforeEach
+    void populate() {
+        bookId = bookService.save(new Book(0, "Release contended", "Release author", 2000));
+        firstReader = personService.save(new Person(0, "Release first reader", 1990));
+        secondReader = personService.save(new Person(0, "Release second reader", 1991));
+    }
+
+    @AfterEach
+    void cleanUp() {
+        bookService.delete(bookId);
+        personService.delete(firstReader);
+        personService.delete(secondReader);
+    }
+
+    @Test
+    void releasesWhatIsHeldNowRatherThanWhatWasRead() throws Exception {
+        bookService.assign(bookId, firstReader);
+
+        Boolean released = transactionTemplate.execute(status -> {
+            // This transaction holds the book at its current version while another one returns and lends it again
+            bookRepository.findById(bookId).orElseThrow();
+            CompletableFuture.runAsync(() -> {
+                bookService.releaseAll(firstReader, List.of(bookId));
+                bookService.assign(bookId, secondReader);
+            }).join();
+            return bookService.release(bookId);
+        });
+
+        assertTrue(Objects.requireNonNull(released));
+        Book book = bookService.findOne(bookId).orElseThrow();
+        assertNull(book.getPerson());
+        assertNull(book.getDateTaken());
+    }
+
+    @Test
+    void releasingAFreeOrMissingBookChangesNothing() {
+        int version = bookService.findOne(bookId).orElseThrow().getVersion();
+
+        assertTrue(bookService.release(bookId));
+        assertEquals(version, bookService.findOne(bookId).orElseThrow().getVersion());
+        assertFalse(bookService.release(Integer.MAX_VALUE));
+    }
+}
@@ -0,0 +1,121 @@
+package org.dmitrysulman.spring.secondboot.services;
+
+import org.dmitrysulman.spring.secondboot.models.Book;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class BookSearchIndexTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private BookSearchIndex bookSearchIndex;
+
+    private final List<Integer> books = new ArrayList<>();
+
+    @BeforeEach
+    void loadIndex() {
+        // Books saved from here on reach the index through its event listeners, not through the initial load
+        bookSearchIndex.search("warm-up", 0, 1);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        books.forEach(bookService::delete);
+    }
+
+    @Test
+    void ranksTitleMatchesAboveAuthorMatches() {
+        int byAuthor = save("Unrelated pages", "Quillfeather");
+        int byTitle = save("Quillfeather chronicle", "Someone else");
+        int byBoth = save("Quillfeather on quillfeather", "Quillfeather");
+
+        BookSearchIndex.Hits hits = bookSearchIndex.search("quillfeather", 0, 10);
+
+        assertEquals(List.of(byBoth, byTitle, byAuthor), hits.getIds());
+        assertEquals(3, hits.getTotal());
+    }
+
+    @Test
+    void expandsOnlyTheLastTermAsAPrefix() {
+        int book = save("Marrowgate almanac", "Tessaly Voight");
+
+        assertEquals(List.of(book), bookSearchIndex.search("almanac marrowg", 0, 10).getIds());
+        assertEquals(List.of(book), bookSearchIndex.search("MARROWGATE tess", 0, 10).getIds());
+        assertEquals(Collections.emptyList(), bookSearchIndex.search("marrowg almanac", 0, 10).getIds());
+    }
+
+    @Test
+    void followsEditsAndDeletes() {
+        int book = save("Brindlewick notes", "Orla Fenn");
+
+        bookService.update(book, new Book(book, "Cobblethorn notes", "Orla Fenn", 2000));
+
+        assertEquals(Collections.emptyList(), bookSearchIndex.search("brindlewick", 0, 10).getIds());
+        assertEquals(List.of(book), bookSearchIndex.search("cobblethorn", 0, 10).getIds());
+
+        bookService.delete(book);
+        books.remove(Integer.valueOf(book));
+
+        assertEquals(0, bookSearchIndex.search("cobblethorn", 0, 10).getTotal());
+    }
+
+    @Test
+    void pagesThroughRankedHits() {
+        List<Integer> saved = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            saved.add(save("Pennywhistle volume " + i, "Ada Crane"));
+        }
+
+        BookSearchIndex.Hits second = bookSearchIndex.search("pennywhistle", 2, 2);
+        BookSearchIndex.Hits beyond = bookSearchIndex.search("pennywhistle", Integer.MAX_VALUE * 2L, Integer.MAX_VALUE);
+
+        assertEquals(saved.subList(2, 4), second.getIds());
+        assertEquals(5, second.getTotal());
+        assertEquals(Collections.emptyList(), beyond.getIds());
+        assertEquals(5, beyond.getTotal());
+        assertThrows(IllegalArgumentException.class, () -> bookSearchIndex.search("pennywhistle", -1, 2));
+        assertThrows(IllegalArgumentException.class, () -> bookSearchIndex.search("pennywhistle", 0, 0));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"page=-1", "books_per_page=0", "books_per_page=-5", "books_per_page=1000000"})
+    void rejectsPagesOutOfBounds(String parameter) throws Exception {
+        mockMvc.perform(get("/books/search?text=the&" + parameter))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void answersPagesFarPastTheEnd() throws Exception {
+        mockMvc.perform(get("/books/search?text=the&books_per_page=100&page=" + Integer.MAX_VALUE))
+                .andExpect(status().isOk());
+    }
+
+    private int save(String title, String author) {
+        int id = bookService.save(new Book(0, title, author, 2000));
+        books.add(id);
+        return id;
+    }
+}
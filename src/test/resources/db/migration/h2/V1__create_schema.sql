@@ -0,0 +1,21 @@
+create table if not exists person
+(
+    id            integer generated by default as identity primary key,
+    full_name     varchar(100) not null,
+    year_of_birth integer      not null
+);
+
+-- The bulk import allocates book ids ahead of its inserts. H2 cannot draw from the sequence behind an identity
+-- column, so book ids come from a named sequence that the pg_get_serial_sequence stand-in resolves.
+create sequence if not exists book_id_seq;
+create alias if not exists pg_get_serial_sequence for 'org.dmitrysulman.spring.secondboot.repositories.H2SerialSequence.serialSequence';
+
+create table if not exists book
+(
+    id         integer default nextval('book_id_seq') primary key,
+    title      varchar(200) not null,
+    author     varchar(400) not null,
+    year       integer      not null,
+    person_id  integer references person (id) on delete set null,
+    date_taken timestamp
+);
@@ -0,0 +1,5 @@
+alter table person add column if not exists version integer default 0 not null;
+alter table person add column if not exists updated_at timestamp(3) default current_timestamp not null;
+
+alter table book add column if not exists version integer default 0 not null;
+alter table book add column if not exists updated_at timestamp(3) default current_timestamp not null;
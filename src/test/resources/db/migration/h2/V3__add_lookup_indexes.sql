@@ -0,0 +1,14 @@
+-- Renames duplicate names first, see the PostgreSQL migration
+update person
+set full_name = left(full_name, 100 - length(' #' || id)) || ' #' || id
+where exists (select 1 from person older where older.full_name = person.full_name and older.id < person.id);
+
+-- H2 has no expression indexes, so the case-insensitive title search falls back to a plain index;
+-- the unique constraint already indexes person.full_name
+alter table person add constraint if not exists person_full_name_key unique (full_name);
+
+create index if not exists book_title_idx on book (title);
+create index if not exists book_person_loans_idx on book (person_id, date_taken, id);
+create index if not exists book_date_taken_idx on book (date_taken);
+create index if not exists book_year_id_idx on book (year, id);
+create index if not exists book_updated_at_idx on book (updated_at, id);
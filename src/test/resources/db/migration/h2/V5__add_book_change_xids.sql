@@ -0,0 +1,23 @@
+-- Change feed positions, see the PostgreSQL migration. H2 has neither transaction ids nor procedural triggers:
+-- H2BookChangeTrigger stamps rows from a sequence, and the txid functions the feed calls are stand-ins that treat
+-- every change as committed.
+create sequence if not exists book_change_xid_seq;
+
+create table if not exists book_tombstone
+(
+    book_id    integer primary key,
+    change_xid bigint not null
+);
+create index if not exists book_tombstone_change_xid_idx on book_tombstone (change_xid, book_id);
+
+-- H2 checks not null before before-triggers run, hence the placeholder default
+alter table book add column if not exists change_xid bigint default 0 not null;
+create index if not exists book_change_xid_idx on book (change_xid, id);
+
+create alias if not exists txid_current_snapshot for 'org.dmitrysulman.spring.secondboot.repositories.H2BookChangeTrigger.currentSnapshot';
+create alias if not exists txid_snapshot_xmin for 'org.dmitrysulman.spring.secondboot.repositories.H2BookChangeTrigger.snapshotXmin';
+
+create trigger if not exists book_change_stamp before insert, update on book
+    for each row call 'org.dmitrysulman.spring.secondboot.repositories.H2BookChangeTrigger';
+create trigger if not exists book_tombstone_record after delete on book
+    for each row call 'org.dmitrysulman.spring.secondboot.repositories.H2BookChangeTrigger';
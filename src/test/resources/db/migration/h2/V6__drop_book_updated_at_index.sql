@@ -0,0 +1 @@
+drop index if exists book_updated_at_idx;